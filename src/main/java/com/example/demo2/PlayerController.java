@@ -1,5 +1,6 @@
 package com.example.demo2;
 
+import com.example.demo2.media.PlaybackResources;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -7,7 +8,6 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
-import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 
 import java.io.File;
@@ -22,6 +22,7 @@ public class PlayerController {
     private Label statusLabel;
 
     private final ObservableList<File> selectedSongs = FXCollections.observableArrayList();
+    private final PlaybackResources resources = PlaybackResources.getInstance();
     private MediaPlayer mediaPlayer;
 
     @FXML
@@ -89,11 +90,8 @@ public class PlayerController {
 
     private void playFile(File file) {
         try {
-            if (mediaPlayer != null) {
-                mediaPlayer.stop();
-            }
-            Media media = new Media(file.toURI().toString());
-            mediaPlayer = new MediaPlayer(media);
+            resources.release(mediaPlayer);
+            mediaPlayer = resources.createPlayer(file);
             statusLabel.setText("Loading: " + file.getName());
             File finalFile = file;
             mediaPlayer.setOnReady(() -> {
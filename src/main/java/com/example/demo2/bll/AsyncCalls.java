@@ -0,0 +1,85 @@
+package com.example.demo2.bll;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs service calls on virtual threads for the async service methods, so a slow or unreachable
+ * database never blocks the caller. Reads are coalesced: while a read is in flight, the same read
+ * (same key) joins it instead of starting another. A write that completes drops every read in
+ * flight from the table, so reads asked for after it always start fresh.
+ * Futures complete on the worker thread; UI callers hop back with their own executor.
+ */
+final class AsyncCalls {
+
+    @FunctionalInterface
+    interface Call<T> {
+        T call() throws Exception;
+    }
+
+    /** A call that gives up when {@code cancelled} reports true. */
+    @FunctionalInterface
+    interface CancellableCall<T> {
+        T call(BooleanSupplier cancelled) throws Exception;
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Map<Object, CompletableFuture<?>> readsInFlight = new ConcurrentHashMap<>();
+
+    private AsyncCalls() {}
+
+    /** Runs the read, or returns the running one with the same key. */
+    @SuppressWarnings("unchecked")
+    static <T> CompletableFuture<T> read(Object key, Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<?> running = readsInFlight.putIfAbsent(key, future);
+        if (running != null) return (CompletableFuture<T>) running;
+        EXECUTOR.execute(() -> {
+            try {
+                T result = call.call();
+                readsInFlight.remove(key, future);
+                future.complete(result);
+            } catch (Throwable e) {
+                readsInFlight.remove(key, future);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs the call on its own, never coalesced, so cancelling the returned future stops only this
+     * caller's work: the call sees the cancellation through its flag and stops early.
+     */
+    static <T> CompletableFuture<T> cancellable(CancellableCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            if (future.isDone()) return;
+            try {
+                future.complete(call.call(future::isCancelled));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    static <T> CompletableFuture<T> write(Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                T result = call.call();
+                readsInFlight.clear();
+                future.complete(result);
+            } catch (Throwable e) {
+                readsInFlight.clear();
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo2.bll;
+
+import com.example.demo2.dal.MetadataCache;
+import com.example.demo2.entities.Song;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Reads the duration of songs stored without one, in the background.
+ * At most {@code maxConcurrent} files are read at a time, on virtual threads that exit when the
+ * queue is empty. Songs asked for with {@link #prioritize} (rows on screen) go before the rest.
+ * Durations found are stored through {@link SongService#updateDurations} in batches of up to
+ * {@code batchSize}, or sooner when a batch has waited {@value #FLUSH_INTERVAL_MS} ms, and then
+ * reported to the listener as copies of the songs; the songs passed in are never modified.
+ */
+public class DurationProbeScheduler {
+    private static final long FLUSH_INTERVAL_MS = 1_000;
+    // more than a screenful of rows; older requests are for rows scrolled away
+    private static final int MAX_URGENT = 64;
+
+    private final SongService songService;
+    private final int maxConcurrent;
+    private final int batchSize;
+    private final Consumer<List<Song>> listener;
+
+    // guarded by this
+    private final LinkedHashMap<Integer, Song> waiting = new LinkedHashMap<>();
+    private final LinkedHashSet<Integer> urgent = new LinkedHashSet<>(); // most recent first
+    private final List<Song> found = new ArrayList<>();
+    private int workers;
+    private long generation;
+    private long lastFlush = System.nanoTime();
+
+    public DurationProbeScheduler(SongService songService, Consumer<List<Song>> listener) {
+        this(songService, 4, 200, listener);
+    }
+
+    public DurationProbeScheduler(SongService songService, int maxConcurrent, int batchSize, Consumer<List<Song>> listener) {
+        this.songService = songService;
+        this.maxConcurrent = maxConcurrent;
+        this.batchSize = batchSize;
+        this.listener = listener;
+    }
+
+    /** Queues the songs that have no duration yet; songs already queued keep their place. */
+    public synchronized void submit(Collection<Song> songs) {
+        for (Song s : songs) {
+            if (s.getId() != null && s.getDurationSeconds() == 0) waiting.putIfAbsent(s.getId(), s);
+        }
+        startWorkers();
+    }
+
+    /**
+     * Moves a queued song ahead of the others, most recent request first. Called on every row
+     * render, so repeated requests only move the song to the front; at most {@value #MAX_URGENT}
+     * are kept.
+     */
+    public synchronized void prioritize(Song song) {
+        if (song.getId() == null || !waiting.containsKey(song.getId())) return;
+        urgent.addFirst(song.getId());
+        if (urgent.size() > MAX_URGENT) urgent.removeLast();
+    }
+
+    /**
+     * Drops everything queued. Files being read finish, but their durations are discarded;
+     * durations found before are still stored.
+     */
+    public synchronized void cancel() {
+        waiting.clear();
+        urgent.clear();
+        generation++;
+    }
+
+    private void startWorkers() {
+        while (workers < maxConcurrent && workers < waiting.size()) {
+            workers++;
+            Thread.startVirtualThread(this::work);
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Song song;
+            long started;
+            List<Song> rest = List.of();
+            synchronized (this) {
+                song = poll();
+                started = generation;
+                if (song == null) {
+                    workers--;
+                    if (workers == 0) rest = takeFound();
+                }
+            }
+            if (song == null) {
+                store(rest);
+                return;
+            }
+            int seconds = probe(song.getFilePath());
+            List<Song> batch = List.of();
+            synchronized (this) {
+                if (seconds > 0 && started == generation) {
+                    found.add(new Song(song.getId(), song.getTitle(), song.getArtist(), seconds, song.getFilePath()));
+                }
+                if (found.size() >= batchSize
+                        || (!found.isEmpty() && System.nanoTime() - lastFlush >= FLUSH_INTERVAL_MS * 1_000_000)) {
+                    batch = takeFound();
+                }
+            }
+            store(batch);
+        }
+    }
+
+    private Song poll() {
+        while (!urgent.isEmpty()) {
+            Song s = waiting.remove(urgent.removeFirst());
+            if (s != null) return s;
+        }
+        Iterator<Song> it = waiting.values().iterator();
+        if (!it.hasNext()) return null;
+        Song s = it.next();
+        it.remove();
+        return s;
+    }
+
+    private List<Song> takeFound() {
+        lastFlush = System.nanoTime();
+        if (found.isEmpty()) return List.of();
+        List<Song> batch = new ArrayList<>(found);
+        found.clear();
+        return batch;
+    }
+
+    private void store(List<Song> batch) {
+        if (batch.isEmpty()) return;
+        try {
+            songService.updateDurations(batch);
+            listener.accept(batch);
+        } catch (SQLException e) {
+            System.err.println("Error storing song durations: " + e.getMessage());
+        }
+    }
+
+    private static int probe(String filePath) {
+        try {
+            Path file = Path.of(filePath);
+            if (!Files.isRegularFile(file)) return 0;
+            return MetadataCache.read(file).durationSeconds();
+        } catch (IOException | InvalidPathException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.demo2.bll;
+
+import com.example.demo2.dal.MetadataCache;
+import com.example.demo2.entities.Song;
+import com.example.demo2.media.MediaMetadata;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports every supported media file below a folder into the library.
+ * Each directory is listed on its own virtual thread and each file is read on one, with a cap on
+ * how many files are open at once. Songs flow through a bounded queue to the calling thread, which
+ * stores them in batches through {@link SongService#createAll}; when the database falls behind the
+ * queue fills up and the scanners wait. Files already in the library are skipped.
+ */
+public class LibraryImporter {
+    public static final Set<String> EXTENSIONS = Set.of(".mp3", ".wav", ".m4a", ".mp4");
+    private static final int MAX_OPEN_FILES = 64;
+    private static final Object END = new Object();
+
+    /** Counts so far; {@code songsPerSecond} is measured from the start of the import. */
+    public record Progress(long filesFound, long imported, long skipped, long failed, double songsPerSecond, boolean done) {}
+
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    private final SongService songService;
+    private final int batchSize;
+    private final int queueCapacity;
+    private volatile boolean cancelled;
+
+    public LibraryImporter(SongService songService) {
+        this(songService, 1_000, 10_000);
+    }
+
+    public LibraryImporter(SongService songService, int batchSize, int queueCapacity) {
+        this.songService = songService;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /** Stops a running import after the batch being stored; songs stored so far stay in the library. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Scans {@code root} and stores the songs found, blocking until done or cancelled.
+     * The listener is called on this thread after every stored batch and once at the end.
+     */
+    public Progress importFolder(Path root, ProgressListener listener) throws SQLException, InterruptedException {
+        cancelled = false;
+        long started = System.nanoTime();
+        Set<String> known = new HashSet<>();
+        for (Song s : songService.getAll()) known.add(s.getFilePath());
+
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Semaphore openFiles = new Semaphore(MAX_OPEN_FILES);
+        AtomicLong pending = new AtomicLong(1); // directories and files not finished yet
+        AtomicLong found = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long imported = 0;
+
+        try (ExecutorService scanners = Executors.newVirtualThreadPerTaskExecutor()) {
+            Scan scan = new Scan(scanners, queue, openFiles, pending, found, skipped, failed, known);
+            scanners.execute(() -> scan.directory(root));
+
+            try {
+                List<Song> batch = new ArrayList<>(batchSize);
+                while (!cancelled) {
+                    Object next = batch.isEmpty() ? queue.take() : queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (next == END) break;
+                    if (next instanceof Song song) batch.add(song);
+                    // store full batches, or a partial one while the scanners are slower than the database
+                    if (batch.size() >= batchSize || (next == null && !batch.isEmpty())) {
+                        imported += store(batch);
+                        listener.onProgress(progress(found, imported, skipped, failed, started, false));
+                    }
+                }
+                if (!cancelled && !batch.isEmpty()) imported += store(batch);
+            } finally {
+                // wakes scanners blocked on the full queue so closing the executor cannot hang
+                scanners.shutdownNow();
+            }
+        }
+        Progress result = progress(found, imported, skipped, failed, started, true);
+        listener.onProgress(result);
+        return result;
+    }
+
+    private int store(List<Song> batch) throws SQLException {
+        songService.createAll(new ArrayList<>(batch));
+        int n = batch.size();
+        batch.clear();
+        return n;
+    }
+
+    private static Progress progress(AtomicLong found, long imported, AtomicLong skipped, AtomicLong failed,
+                                     long started, boolean done) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+        return new Progress(found.get(), imported, skipped.get(), failed.get(), imported / seconds, done);
+    }
+
+    /**
+     * Song for the file with the duration and tags read from its headers. Without tags it is taken
+     * to be named "Artist - Title.ext", or titled after the file with its folder as artist.
+     */
+    static Song songFromFile(Path file) {
+        MediaMetadata meta;
+        try {
+            meta = MetadataCache.read(file);
+        } catch (IOException e) {
+            meta = MediaMetadata.UNKNOWN;
+        }
+        String name = file.getFileName().toString();
+        String base = name.substring(0, name.lastIndexOf('.'));
+        int dash = base.indexOf(" - ");
+        String artist;
+        String title;
+        if (dash > 0) {
+            artist = base.substring(0, dash).trim();
+            title = base.substring(dash + 3).trim();
+        } else {
+            Path parent = file.getParent();
+            artist = parent != null && parent.getFileName() != null ? parent.getFileName().toString() : "Unknown";
+            title = base;
+        }
+        if (meta.title() != null) title = meta.title();
+        if (meta.artist() != null) artist = meta.artist();
+        return new Song(title, artist, meta.durationSeconds(), file.toAbsolutePath().toString());
+    }
+
+    static boolean isSupported(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot));
+    }
+
+    /** Scanner state shared by the virtual threads of one import. */
+    private record Scan(ExecutorService scanners, BlockingQueue<Object> queue, Semaphore openFiles,
+                        AtomicLong pending, AtomicLong found, AtomicLong skipped, AtomicLong failed,
+                        Set<String> known) {
+
+        void directory(Path dir) {
+            try {
+                openFiles.acquire();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            fork(() -> directory(entry));
+                        } else if (isSupported(entry)) {
+                            found.incrementAndGet();
+                            fork(() -> file(entry));
+                        }
+                    }
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    openFiles.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done();
+            }
+        }
+
+        void file(Path file) {
+            try {
+                if (known.contains(file.toAbsolutePath().toString())) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                openFiles.acquire();
+                Song song;
+                try {
+                    song = songFromFile(file);
+                } finally {
+                    openFiles.release();
+                }
+                queue.put(song); // blocks while the importer is behind
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            } finally {
+                done();
+            }
+        }
+
+        private void fork(Runnable task) {
+            pending.incrementAndGet();
+            try {
+                scanners.execute(task);
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet(); // import was cancelled
+            }
+        }
+
+        private void done() {
+            if (pending.decrementAndGet() == 0) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
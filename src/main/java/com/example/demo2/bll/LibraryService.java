@@ -0,0 +1,24 @@
+package com.example.demo2.bll;
+
+import com.example.demo2.dal.LibraryDAO;
+import com.example.demo2.entities.LibrarySnapshot;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Business logic for reading the library as a whole.
+ */
+public class LibraryService {
+    private final LibraryDAO libraryDAO = new LibraryDAO();
+
+    /** Songs, playlists and playlist contents from a single consistent read. */
+    public LibrarySnapshot loadSnapshot() throws SQLException {
+        return libraryDAO.load();
+    }
+
+    /** {@link #loadSnapshot()} on a virtual thread; concurrent requests share one load. */
+    public CompletableFuture<LibrarySnapshot> loadSnapshotAsync() {
+        return AsyncCalls.read("snapshot", this::loadSnapshot);
+    }
+}
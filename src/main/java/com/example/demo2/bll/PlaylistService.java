@@ -2,10 +2,13 @@ package com.example.demo2.bll;
 
 import com.example.demo2.dal.PlaylistDAO;
 import com.example.demo2.entities.Playlist;
+import com.example.demo2.entities.PlaylistEntry;
 import com.example.demo2.entities.Song;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Business logic for playlists and their songs ordering.
@@ -23,9 +26,37 @@ public class PlaylistService {
 
     public List<Song> getSongs(int playlistId) throws SQLException { return playlistDAO.getSongs(playlistId); }
 
+    public List<PlaylistEntry> getEntriesPage(int playlistId, Integer afterKey, int limit) throws SQLException { return playlistDAO.getEntriesPage(playlistId, afterKey, limit); }
+
+    public Stream<Song> streamSongs(int playlistId, int fetchSize) throws SQLException { return playlistDAO.streamSongs(playlistId, fetchSize); }
+
+    public List<Playlist> getPlaylistsContaining(int songId) throws SQLException { return playlistDAO.findContaining(songId); }
+
     public void addSongToEnd(int playlistId, int songId) throws SQLException { playlistDAO.addSongToEnd(playlistId, songId); }
 
+    public void addSongsToEnd(int playlistId, List<Integer> songIds) throws SQLException { playlistDAO.addSongsToEnd(playlistId, songIds); }
+
     public void removeAtPosition(int playlistId, int position) throws SQLException { playlistDAO.removeAtPosition(playlistId, position); }
 
     public void move(int playlistId, int fromPos, int toPos) throws SQLException { playlistDAO.move(playlistId, fromPos, toPos); }
+
+    // Async variants, run on virtual threads; see AsyncCalls
+
+    public CompletableFuture<List<Playlist>> getAllAsync() { return AsyncCalls.read("playlists", this::getAll); }
+
+    public CompletableFuture<List<Song>> getSongsAsync(int playlistId) { return AsyncCalls.read(List.of("playlist", playlistId), () -> getSongs(playlistId)); }
+
+    public CompletableFuture<List<Playlist>> getPlaylistsContainingAsync(int songId) { return AsyncCalls.read(List.of("containing", songId), () -> getPlaylistsContaining(songId)); }
+
+    public CompletableFuture<Playlist> createAsync(Playlist p) { return AsyncCalls.write(() -> create(p)); }
+
+    public CompletableFuture<Void> renameAsync(Playlist p) { return AsyncCalls.write(() -> { rename(p); return null; }); }
+
+    public CompletableFuture<Boolean> deleteAsync(int playlistId) { return AsyncCalls.write(() -> delete(playlistId)); }
+
+    public CompletableFuture<Void> addSongToEndAsync(int playlistId, int songId) { return AsyncCalls.write(() -> { addSongToEnd(playlistId, songId); return null; }); }
+
+    public CompletableFuture<Void> removeAtPositionAsync(int playlistId, int position) { return AsyncCalls.write(() -> { removeAtPosition(playlistId, position); return null; }); }
+
+    public CompletableFuture<Void> moveAsync(int playlistId, int fromPos, int toPos) { return AsyncCalls.write(() -> { move(playlistId, fromPos, toPos); return null; }); }
 }
@@ -1,10 +1,19 @@
 package com.example.demo2.bll;
 
+import com.example.demo2.dal.FingerprintIndex;
 import com.example.demo2.dal.SongDAO;
+import com.example.demo2.entities.DuplicateGroup;
 import com.example.demo2.entities.Song;
 
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * Business logic for songs.
@@ -16,6 +25,16 @@ public class SongService {
         return songDAO.findAll();
     }
 
+    /** Next page of songs in title order after {@code after}; pass null for the first page. */
+    public List<Song> getPage(Song after, int limit) throws SQLException {
+        return songDAO.findPage(after, limit);
+    }
+
+    /** All songs in title order without loading them at once; close the stream when done. */
+    public Stream<Song> streamAll(int fetchSize) throws SQLException {
+        return songDAO.streamAll(fetchSize);
+    }
+
     public List<Song> search(String query) throws SQLException {
         if (query == null || query.isBlank()) return getAll();
         return songDAO.search(query);
@@ -25,11 +44,101 @@ public class SongService {
         return songDAO.insert(s);
     }
 
+    /** Adds many songs in one transaction; ids are set on the given songs. */
+    public List<Song> createAll(List<Song> songs) throws SQLException {
+        return songDAO.insertAll(songs);
+    }
+
     public void update(Song s) throws SQLException {
         songDAO.update(s);
     }
 
+    /** Stores only the durations of the given songs, in one batch. */
+    public void updateDurations(List<Song> songs) throws SQLException {
+        songDAO.updateDurations(songs);
+    }
+
     public boolean delete(int songId) throws SQLException {
         return songDAO.delete(songId);
     }
+
+    // Async variants, run on virtual threads; see AsyncCalls
+
+    public CompletableFuture<List<Song>> getAllAsync() {
+        return AsyncCalls.read("songs", this::getAll);
+    }
+
+    public CompletableFuture<List<Song>> searchAsync(String query) {
+        return AsyncCalls.read(List.of("songs", "search", query == null ? "" : query), () -> search(query));
+    }
+
+    /**
+     * Search that stops when the returned future is cancelled. When {@code previousResults} are
+     * the results for {@code previousQuery} and the query extends it, they are narrowed in memory
+     * instead of searching again; pass null for both to always search.
+     */
+    public CompletableFuture<List<Song>> searchAsync(String query, String previousQuery, List<Song> previousResults) {
+        return AsyncCalls.cancellable(cancelled -> {
+            if (query == null || query.isBlank()) return getAll();
+            if (previousResults != null && SongDAO.canNarrow(previousQuery, query)) {
+                return songDAO.narrow(previousResults, query, cancelled);
+            }
+            return songDAO.search(query, cancelled);
+        });
+    }
+
+    public CompletableFuture<Song> createAsync(Song s) {
+        return AsyncCalls.write(() -> create(s));
+    }
+
+    public CompletableFuture<Void> updateAsync(Song s) {
+        return AsyncCalls.write(() -> {
+            update(s);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(int songId) {
+        return AsyncCalls.write(() -> delete(songId));
+    }
+
+    /**
+     * Groups of songs whose files hold the same audio, found by hashing each file's audio payload.
+     * Files are hashed in parallel, one per core, and only when new or changed since last hashed;
+     * songs whose file is missing or unreadable are left out.
+     */
+    public List<DuplicateGroup> findDuplicates() throws SQLException, InterruptedException {
+        List<Song> all = getAll();
+        Map<Song, Future<String>> hashes = new LinkedHashMap<>();
+        try (ExecutorService hashers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            for (Song s : all) hashes.put(s, hashers.submit(() -> FingerprintIndex.fingerprint(Path.of(s.getFilePath()))));
+        }
+        Map<String, List<Song>> byFingerprint = new HashMap<>();
+        for (Map.Entry<Song, Future<String>> e : hashes.entrySet()) {
+            try {
+                byFingerprint.computeIfAbsent(e.getValue().get(), k -> new ArrayList<>()).add(e.getKey());
+            } catch (ExecutionException ex) {
+                // file missing or unreadable
+            }
+        }
+        List<DuplicateGroup> groups = new ArrayList<>();
+        byFingerprint.forEach((fingerprint, songs) -> {
+            if (songs.size() < 2) return;
+            songs.sort(Comparator.comparing(Song::getId));
+            groups.add(new DuplicateGroup(fingerprint, List.copyOf(songs)));
+        });
+        groups.sort(Comparator.comparing(g -> g.survivor().getId()));
+        return groups;
+    }
+
+    /** Keeps the first song of each group; the others are deleted and their playlist entries moved to it. */
+    public int mergeDuplicates(List<DuplicateGroup> groups) throws SQLException {
+        int removed = 0;
+        for (DuplicateGroup g : groups) {
+            List<Integer> ids = g.duplicates().stream().map(Song::getId).toList();
+            songDAO.mergeInto(g.survivor().getId(), ids);
+            removed += ids.size();
+        }
+        return removed;
+    }
 }
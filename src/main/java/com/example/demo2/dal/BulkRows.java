@@ -0,0 +1,87 @@
+package com.example.demo2.dal;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * In-memory rows fed to {@link SQLServerBulkCopy}, which streams them to the server as one bulk
+ * load instead of one statement per row. Used by the DAOs for large inserts on SQL Server.
+ * The driver's interface is Serializable, but instances live for one copy and are never serialized.
+ */
+@SuppressWarnings("serial")
+final class BulkRows implements ISQLServerBulkData {
+    private static final int BATCH_SIZE = 5_000;
+
+    record Column(String name, int sqlType, int precision) {}
+
+    private final transient List<Column> columns;
+    private final transient Iterator<Object[]> rows;
+    private transient Object[] current;
+
+    private BulkRows(List<Column> columns, List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows.iterator();
+    }
+
+    /**
+     * Copies the rows into {@code table} on the connection's current transaction. Values for
+     * identity columns are kept as given.
+     */
+    static void copy(Connection c, String table, List<Column> columns, List<Object[]> rows) throws SQLException {
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setKeepIdentity(true);
+        options.setBatchSize(BATCH_SIZE);
+        options.setCheckConstraints(true);
+        try (SQLServerBulkCopy bulk = new SQLServerBulkCopy(c.unwrap(SQLServerConnection.class))) {
+            bulk.setBulkCopyOptions(options);
+            bulk.setDestinationTableName(table);
+            for (Column column : columns) bulk.addColumnMapping(column.name(), column.name());
+            bulk.writeToServer(new BulkRows(columns, rows));
+        }
+    }
+
+    @Override
+    public Set<Integer> getColumnOrdinals() {
+        Set<Integer> ordinals = new LinkedHashSet<>();
+        for (int i = 1; i <= columns.size(); i++) ordinals.add(i);
+        return ordinals;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns.get(column - 1).name();
+    }
+
+    @Override
+    public int getColumnType(int column) {
+        return columns.get(column - 1).sqlType();
+    }
+
+    @Override
+    public int getPrecision(int column) {
+        return columns.get(column - 1).precision();
+    }
+
+    @Override
+    public int getScale(int column) {
+        return 0;
+    }
+
+    @Override
+    public Object[] getRowData() {
+        return current;
+    }
+
+    @Override
+    public boolean next() {
+        if (!rows.hasNext()) return false;
+        current = rows.next();
+        return true;
+    }
+}
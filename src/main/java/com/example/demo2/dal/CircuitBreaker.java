@@ -0,0 +1,148 @@
+package com.example.demo2.dal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker guarding the SQL Server connection.
+ * CLOSED lets requests through. After enough consecutive failures it trips to OPEN, where
+ * requests fail fast while a background probe retries with exponential backoff. A running
+ * probe puts the breaker in HALF_OPEN; success closes it again, failure re-opens it.
+ */
+public final class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Notified on every state transition, on the thread that caused it. */
+    @FunctionalInterface
+    public interface StateListener {
+        void onStateChange(State from, State to);
+    }
+
+    /** Health check run while the breaker is open; throwing means still unhealthy. */
+    @FunctionalInterface
+    interface Probe {
+        void check() throws Exception;
+    }
+
+    private final String name;
+    private final Probe probe;
+    private final int failureThreshold;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+
+    private volatile State state = State.CLOSED;
+    private int consecutiveFailures;   // guarded by this
+    private long backoffMillis;        // guarded by this
+    private boolean probeScheduled;    // guarded by this
+
+    CircuitBreaker(String name, Probe probe, int failureThreshold, long initialBackoffMillis, long maxBackoffMillis) {
+        this.name = name;
+        this.probe = probe;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.backoffMillis = this.initialBackoffMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-breaker-probe");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** True when callers may attempt the protected operation. */
+    public boolean allowRequest() {
+        return state == State.CLOSED;
+    }
+
+    public void addListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    void recordSuccess() {
+        synchronized (this) {
+            consecutiveFailures = 0;
+        }
+    }
+
+    void recordFailure(Throwable cause) {
+        boolean trip;
+        synchronized (this) {
+            if (state != State.CLOSED) return;
+            trip = ++consecutiveFailures >= failureThreshold;
+        }
+        if (trip) {
+            LOGGER.log(Level.WARNING, "{0} unavailable, switching to offline mode: {1}",
+                    new Object[]{name, cause == null ? "unknown error" : cause.getMessage()});
+            transition(State.OPEN);
+            scheduleProbe();
+        }
+    }
+
+    private void scheduleProbe() {
+        long delay;
+        synchronized (this) {
+            if (probeScheduled) return;
+            probeScheduled = true;
+            long jitter = ThreadLocalRandom.current().nextLong(backoffMillis / 10 + 1);
+            delay = backoffMillis + jitter;
+        }
+        scheduler.schedule(this::runProbe, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runProbe() {
+        synchronized (this) {
+            probeScheduled = false;
+        }
+        transition(State.HALF_OPEN);
+        try {
+            probe.check();
+        } catch (Exception e) {
+            synchronized (this) {
+                backoffMillis = Math.min(maxBackoffMillis, backoffMillis * 2);
+            }
+            transition(State.OPEN);
+            scheduleProbe();
+            return;
+        }
+        synchronized (this) {
+            consecutiveFailures = 0;
+            backoffMillis = initialBackoffMillis;
+        }
+        LOGGER.log(Level.INFO, "{0} reachable again, leaving offline mode", name);
+        transition(State.CLOSED);
+    }
+
+    private void transition(State to) {
+        State from;
+        synchronized (this) {
+            from = state;
+            if (from == to) return;
+            state = to;
+        }
+        for (StateListener l : listeners) {
+            try {
+                l.onStateChange(from, to);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Circuit breaker listener failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.demo2.dal;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Concurrent map from primitive int keys to objects, without boxing keys or allocating entry nodes.
+ * The table is split into segments, each an open-addressing (linear probing) table guarded by a
+ * {@link StampedLock}. Lookups are optimistic and take no lock unless they race with a writer to
+ * the same segment; writers lock only their segment.
+ */
+final class ConcurrentIntObjectMap<V> {
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    ConcurrentIntObjectMap() {
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment();
+    }
+
+    V get(int key) {
+        int h = hash(key);
+        return cast(segments[h & (SEGMENTS - 1)].get(key, h >>> SEGMENT_SHIFT));
+    }
+
+    V getOrDefault(int key, V defaultValue) {
+        V v = get(key);
+        return v != null ? v : defaultValue;
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /** Stores a non-null value; returns the previous one, or null. */
+    V put(int key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        int h = hash(key);
+        return cast(segments[h & (SEGMENTS - 1)].put(key, h >>> SEGMENT_SHIFT, value));
+    }
+
+    V remove(int key) {
+        int h = hash(key);
+        return cast(segments[h & (SEGMENTS - 1)].remove(key, h >>> SEGMENT_SHIFT));
+    }
+
+    int size() {
+        int n = 0;
+        for (Segment s : segments) n += s.size();
+        return n;
+    }
+
+    void clear() {
+        for (Segment s : segments) s.clear();
+    }
+
+    /** Visits values segment by segment; each segment is read consistently, the map as a whole is not. */
+    void forEachValue(Consumer<? super V> action) {
+        for (Segment s : segments) s.forEach(null, v -> action.accept(cast(v)));
+    }
+
+    void forEachKey(IntConsumer action) {
+        for (Segment s : segments) s.forEach(action, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object o) {
+        return (V) o;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Segment {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final StampedLock lock = new StampedLock();
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY]; // null marks a free slot
+        private int size;
+
+        Object get(int key, int h) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    Object v = find(keys, values, key, h);
+                    if (lock.validate(stamp)) return v;
+                } catch (RuntimeException ignored) {
+                    // torn read during a concurrent resize, retry under the read lock
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(keys, values, key, h);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static Object find(int[] k, Object[] v, int key, int h) {
+            int mask = k.length - 1;
+            if (v.length != k.length) throw new IllegalStateException("inconsistent table");
+            for (int i = h & mask, probes = 0; probes < k.length; i = (i + 1) & mask, probes++) {
+                Object value = v[i];
+                if (value == null) return null;
+                if (k[i] == key) return value;
+            }
+            return null;
+        }
+
+        Object put(int key, int h, Object value) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int i = h & mask;
+                while (values[i] != null) {
+                    if (keys[i] == key) {
+                        Object old = values[i];
+                        values[i] = value;
+                        return old;
+                    }
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 4 > keys.length * 3) resize();
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Object remove(int key, int h) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int i = h & mask;
+                while (values[i] != null) {
+                    if (keys[i] == key) {
+                        Object old = values[i];
+                        deleteSlot(i);
+                        size--;
+                        return old;
+                    }
+                    i = (i + 1) & mask;
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /** Backward-shift deletion keeps probe chains intact without tombstones. */
+        private void deleteSlot(int hole) {
+            int mask = keys.length - 1;
+            int i = hole;
+            while (true) {
+                i = (i + 1) & mask;
+                if (values[i] == null) break;
+                int home = (hash(keys[i]) >>> SEGMENT_SHIFT) & mask;
+                // move entry i into the hole unless its home lies cyclically in (hole, i]
+                boolean stays = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+                if (!stays) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            values[hole] = null;
+            keys[hole] = 0;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            int[] newKeys = new int[oldKeys.length * 2];
+            Object[] newValues = new Object[oldKeys.length * 2];
+            int mask = newKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] == null) continue;
+                int i = (hash(oldKeys[j]) >>> SEGMENT_SHIFT) & mask;
+                while (newValues[i] != null) i = (i + 1) & mask;
+                newKeys[i] = oldKeys[j];
+                newValues[i] = oldValues[j];
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                keys = new int[INITIAL_CAPACITY];
+                values = new Object[INITIAL_CAPACITY];
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void forEach(IntConsumer keyAction, Consumer<Object> valueAction) {
+            int[] k;
+            Object[] v;
+            long stamp = lock.readLock();
+            try {
+                k = Arrays.copyOf(keys, keys.length);
+                v = Arrays.copyOf(values, values.length);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            // callbacks run outside the lock so they may write back into the map
+            for (int i = 0; i < k.length; i++) {
+                if (v[i] == null) continue;
+                if (keyAction != null) keyAction.accept(k[i]);
+                if (valueAction != null) valueAction.accept(v[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.demo2.dal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded pool of physical JDBC connections.
+ * Connections are validated before reuse, evicted after sitting idle or exceeding their
+ * maximum lifetime, and each one keeps a small LRU cache of prepared statements.
+ * Callers use the returned connection exactly like a plain one: close() hands it back.
+ */
+final class ConnectionPool implements AutoCloseable {
+    /** Opens a new physical connection. */
+    @FunctionalInterface
+    interface ConnectionSource {
+        Connection open() throws SQLException;
+    }
+
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 1_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_SECONDS = 30;
+
+    private final ConnectionSource source;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+    private final Consumer<SQLException> connectionErrorListener;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // guarded by this, most recently used first
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    ConnectionPool(ConnectionSource source, int maxSize, long idleTimeoutMillis, long maxLifetimeMillis,
+                   long borrowTimeoutMillis, int statementCacheSize) {
+        this(source, maxSize, idleTimeoutMillis, maxLifetimeMillis, borrowTimeoutMillis, statementCacheSize, e -> { });
+    }
+
+    /**
+     * @param connectionErrorListener told about connection-level failures (SQLState class 08)
+     *                                raised while a borrowed connection is in use
+     */
+    ConnectionPool(ConnectionSource source, int maxSize, long idleTimeoutMillis, long maxLifetimeMillis,
+                   long borrowTimeoutMillis, int statementCacheSize, Consumer<SQLException> connectionErrorListener) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be positive");
+        this.source = source;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.connectionErrorListener = connectionErrorListener;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::evictStale,
+                HOUSEKEEPING_PERIOD_SECONDS, HOUSEKEEPING_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrow a connection, reusing an idle one when it is still valid.
+     * Blocks up to the borrow timeout when every connection is checked out.
+     */
+    Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        try {
+            PooledConnection pc;
+            while ((pc = pollIdle()) != null) {
+                if (isReusable(pc)) return pc.lease();
+                pc.closePhysical();
+            }
+            return new PooledConnection(source.open()).lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        synchronized (this) {
+            idle.forEach(PooledConnection::closePhysical);
+            idle.clear();
+        }
+    }
+
+    private synchronized PooledConnection pollIdle() {
+        return idle.pollFirst();
+    }
+
+    private boolean isReusable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (now - pc.createdAt >= maxLifetimeMillis) return false;
+        if (now - pc.lastReturnedAt < VALIDATE_AFTER_IDLE_MILLIS) return true;
+        try {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(PooledConnection pc) {
+        try {
+            boolean keep = !closed && !pc.broken && System.currentTimeMillis() - pc.createdAt < maxLifetimeMillis;
+            if (keep) {
+                try {
+                    if (!pc.physical.getAutoCommit()) {
+                        pc.physical.rollback();
+                        pc.physical.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    keep = false;
+                }
+            }
+            if (keep) {
+                pc.lastReturnedAt = System.currentTimeMillis();
+                synchronized (this) {
+                    idle.addFirst(pc);
+                }
+            } else {
+                pc.closePhysical();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictStale() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Iterator<PooledConnection> it = idle.iterator(); it.hasNext(); ) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReturnedAt >= idleTimeoutMillis || now - pc.createdAt >= maxLifetimeMillis) {
+                    it.remove();
+                    pc.closePhysical();
+                }
+            }
+        }
+    }
+
+    private static Object invoke(Object target, Method m, Object[] args) throws Throwable {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps a statement that is not cached so that getConnection() returns the borrowed handle;
+     * the physical connection must never reach callers, who could close it behind the pool's back.
+     */
+    @SuppressWarnings("unchecked")
+    private static <S extends Statement> S bindTo(Connection handle, S statement) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        InvocationHandler h = (proxy, m, args) -> switch (m.getName()) {
+            case "getConnection" -> handle;
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> ConnectionPool.invoke(statement, m, args);
+        };
+        return (S) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{type}, h);
+    }
+
+    /** One physical connection plus its statement cache. Only used by one borrower at a time. */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastReturnedAt = createdAt;
+        private boolean broken;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) return false;
+                if (!eldest.getValue().inUse) eldest.getValue().closeQuietly();
+                else eldest.getValue().evicted = true;
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+
+        PreparedStatement prepare(Connection handle, String sql, int autoGeneratedKeys) throws SQLException {
+            if (statementCacheSize <= 0) return bindTo(handle, physical.prepareStatement(sql, autoGeneratedKeys));
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached == null) {
+                cached = new CachedStatement(physical.prepareStatement(sql, autoGeneratedKeys));
+                statements.put(key, cached);
+            } else if (cached.inUse) {
+                // same SQL opened twice on one connection, hand out an uncached statement
+                return bindTo(handle, physical.prepareStatement(sql, autoGeneratedKeys));
+            }
+            cached.inUse = true;
+            return cached.checkout(handle);
+        }
+
+        void releaseStatements() {
+            for (CachedStatement cs : statements.values()) cs.inUse = false;
+        }
+
+        void closePhysical() {
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection owner;
+        private boolean closed;
+
+        Lease(PooledConnection owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            switch (m.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        owner.releaseStatements();
+                        giveBack(owner);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || owner.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled[" + owner.physical + "]";
+                }
+                default -> { }
+            }
+            if (closed) throw new SQLException("Connection has been returned to the pool");
+            try {
+                if (m.getName().equals("prepareStatement") && args.length <= 2 && args[0] instanceof String sql) {
+                    if (args.length == 1) return owner.prepare((Connection) proxy, sql, Statement.NO_GENERATED_KEYS);
+                    if (args[1] instanceof Integer keys) return owner.prepare((Connection) proxy, sql, keys);
+                }
+                Object result = ConnectionPool.invoke(owner.physical, m, args);
+                return result instanceof Statement st ? bindTo((Connection) proxy, st) : result;
+            } catch (SQLException e) {
+                String state = e.getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    owner.broken = true;
+                    connectionErrorListener.accept(e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /** A prepared statement kept open across leases of the same physical connection. */
+    private static final class CachedStatement {
+        private final PreparedStatement physical;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement checkout(Connection handle) {
+            InvocationHandler h = new InvocationHandler() {
+                private boolean returned;
+
+                @Override
+                public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                    switch (m.getName()) {
+                        case "close" -> {
+                            if (!returned) {
+                                returned = true;
+                                inUse = false;
+                                if (evicted) {
+                                    closeQuietly();
+                                } else {
+                                    physical.clearParameters();
+                                    physical.clearBatch();
+                                }
+                            }
+                            return null;
+                        }
+                        case "isClosed" -> {
+                            return returned || physical.isClosed();
+                        }
+                        case "getConnection" -> {
+                            return handle;
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        default -> { }
+                    }
+                    if (returned) throw new SQLException("Statement is closed");
+                    return ConnectionPool.invoke(physical, m, args);
+                }
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, h);
+        }
+
+        void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -1,10 +1,24 @@
 package com.example.demo2.dal;
 
+import dk.easv.mytunes.dal.DatabaseConnection;
+
 import java.sql.*;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
- * Provides JDBC connection to EASV-DB4 (SQL Server) and initializes schema on first use.
+ * Provides pooled JDBC connections to EASV-DB4 (SQL Server), or to the SQLite file a JDBC_URL points
+ * at, and initializes schema on first use.
  * Falls back gracefully when database is unavailable.
+ * Connection settings come from {@link DatabaseConnection} (JDBC_URL / DB_* environment variables),
+ * pool sizing from DB_POOL_* variables.
+ * A {@link CircuitBreaker} decides when the database counts as available: connection failures trip it,
+ * callers then fail fast while a background probe waits for the server to come back. Other errors, such
+ * as a busy pool or a failing schema statement, are passed to the caller without tripping it.
+ * <p>
+ * Rows are inserted with ids from {@link IdAllocator}, so on SQL Server the login needs ALTER
+ * permission on songs and playlists (for SET IDENTITY_INSERT and identity-keeping bulk copy).
+ * Without it inserts fail with an error instead of being stored offline.
  */
 public final class DBManager {
     private static final String SERVER = "10.176.111.34";
@@ -12,62 +26,157 @@ public final class DBManager {
     private static final String DATABASE = "Natbur001_MyTunes";
     private static final String USERNAME = "CS2025b_e_4";
     private static final String PASSWORD = "CS2025bE4#23";
-    private static final String DB_URL = "jdbc:sqlserver://" + SERVER + ":" + PORT + ";databaseName=" + DATABASE + ";encrypt=true;trustServerCertificate=true";
+    private static final DatabaseConnection SOURCE = new DatabaseConnection(SERVER, PORT, DATABASE, USERNAME, PASSWORD);
+    private static final SqlDialect DIALECT = SqlDialect.forUrl(SOURCE.getJdbcUrl());
+    private static final ConnectionPool POOL = new ConnectionPool(DBManager::connect,
+            envInt("DB_POOL_SIZE", 8),
+            envInt("DB_POOL_IDLE_TIMEOUT_MS", 5 * 60_000),
+            envInt("DB_POOL_MAX_LIFETIME_MS", 30 * 60_000),
+            envInt("DB_POOL_BORROW_TIMEOUT_MS", 10_000),
+            envInt("DB_STATEMENT_CACHE_SIZE", 32),
+            DBManager::onConnectionLost);
+    private static final CircuitBreaker BREAKER = new CircuitBreaker("SQL Server", DBManager::probe,
+            envInt("DB_BREAKER_FAILURE_THRESHOLD", 1),
+            envInt("DB_BREAKER_INITIAL_BACKOFF_MS", 2_000),
+            envInt("DB_BREAKER_MAX_BACKOFF_MS", 120_000));
     private static volatile boolean initialized = false;
-    private static volatile boolean available = true;
+    private static volatile Set<String> tablesWithoutExplicitIds = Set.of();
 
     private DBManager() {}
 
+    /** SQL dialect of the configured database. */
+    static SqlDialect dialect() {
+        return DIALECT;
+    }
+
     static {
-        try {
-            Class.forName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
-        } catch (ClassNotFoundException ignored) {
-        }
+        Runtime.getRuntime().addShutdownHook(new Thread(POOL::close, "db-pool-shutdown"));
     }
 
     public static boolean isAvailable() {
-        return available;
+        return BREAKER.allowRequest();
+    }
+
+    public static CircuitBreaker.State getState() {
+        return BREAKER.getState();
+    }
+
+    /**
+     * Register for online/offline transitions, e.g. to reload data when the server comes back.
+     * Listeners run on a background thread.
+     */
+    public static void addStateListener(CircuitBreaker.StateListener listener) {
+        BREAKER.addListener(listener);
+    }
+
+    public static void removeStateListener(CircuitBreaker.StateListener listener) {
+        BREAKER.removeListener(listener);
     }
 
+    /**
+     * Borrow a pooled connection. Closing it returns it to the pool.
+     */
     public static Connection getConnection() throws SQLException {
-        if (!available) {
+        if (!BREAKER.allowRequest()) {
             throw new SQLException("Database is not available. Running in offline mode.");
         }
+        // failures to connect are recorded in connect()
+        Connection conn = POOL.borrow();
         try {
-            Connection conn = DriverManager.getConnection(DB_URL, USERNAME, PASSWORD);
             ensureInitialized(conn);
-            return conn;
         } catch (SQLException e) {
-            available = false;
+            conn.close();
+            if (isConnectionError(e)) BREAKER.recordFailure(e);
+            throw e;
+        }
+        BREAKER.recordSuccess();
+        return conn;
+    }
+
+    /** Opens a physical connection for the pool; a failure here means the server is unreachable. */
+    private static Connection connect() throws SQLException {
+        Connection conn;
+        try {
+            conn = SOURCE.getConnection();
+        } catch (SQLException e) {
+            BREAKER.recordFailure(e);
+            throw e;
+        }
+        try (Statement st = conn.createStatement()) {
+            for (String setting : DIALECT.sessionSettings()) st.execute(setting);
+        } catch (SQLException e) {
+            conn.close();
             throw e;
         }
+        return conn;
+    }
+
+    private static boolean isConnectionError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    /**
+     * Fails unless rows with explicit ids may be inserted into the table. Called before inserting
+     * and outside the DAOs' offline fallback, so a missing grant surfaces as an error.
+     */
+    static void checkExplicitIds(String table) throws SQLException {
+        if (!initialized) {
+            try {
+                getConnection().close(); // initializes the schema and permission check
+            } catch (SQLException e) {
+                return; // unreachable; the insert falls back to the offline store
+            }
+        }
+        if (tablesWithoutExplicitIds.contains(table)) {
+            throw new SQLException("Cannot add to " + table + ": the database login needs ALTER permission on " +
+                    table + " to insert rows with their ids (SET IDENTITY_INSERT)");
+        }
+    }
+
+    private static void onConnectionLost(SQLException e) {
+        BREAKER.recordFailure(e);
+    }
+
+    private static void probe() throws SQLException {
+        try (Connection conn = POOL.borrow()) {
+            if (!conn.isValid(5)) throw new SQLException("Connection validation failed");
+            ensureInitialized(conn);
+        }
+    }
+
+    private static int envInt(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
     }
 
     private static synchronized void ensureInitialized(Connection conn) throws SQLException {
         if (initialized) return;
         try (Statement st = conn.createStatement()) {
-            st.executeUpdate("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'songs') " +
-                    "CREATE TABLE songs (" +
-                    "id INT PRIMARY KEY IDENTITY(1,1), " +
-                    "title NVARCHAR(255) NOT NULL, " +
-                    "artist NVARCHAR(255) NOT NULL, " +
-                    "duration_seconds INT NOT NULL DEFAULT 0, " +
-                    "file_path NVARCHAR(MAX) NOT NULL)");
-
-            st.executeUpdate("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'playlists') " +
-                    "CREATE TABLE playlists (" +
-                    "id INT PRIMARY KEY IDENTITY(1,1), " +
-                    "name NVARCHAR(255) NOT NULL UNIQUE)");
-
-            st.executeUpdate("IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'playlist_songs') " +
-                    "CREATE TABLE playlist_songs (" +
-                    "playlist_id INT NOT NULL, " +
-                    "position INT NOT NULL, " +
-                    "song_id INT NOT NULL, " +
-                    "PRIMARY KEY (playlist_id, position), " +
-                    "FOREIGN KEY (playlist_id) REFERENCES playlists(id) ON DELETE CASCADE, " +
-                    "FOREIGN KEY (song_id) REFERENCES songs(id) ON DELETE CASCADE)");
+            for (String ddl : DIALECT.schema()) st.executeUpdate(ddl);
         }
+        if (DIALECT == SqlDialect.SQL_SERVER) tablesWithoutExplicitIds = tablesWithoutAlter(conn, "songs", "playlists");
         initialized = true;
     }
+
+    private static Set<String> tablesWithoutAlter(Connection conn, String... tables) throws SQLException {
+        Set<String> missing = new HashSet<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT HAS_PERMS_BY_NAME(?, 'OBJECT', 'ALTER')")) {
+            for (String table : tables) {
+                ps.setString(1, table);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) missing.add(table);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            System.err.println("Database login lacks ALTER permission on " + missing + "; adding rows there will fail");
+        }
+        return Set.copyOf(missing);
+    }
 }
@@ -0,0 +1,56 @@
+package com.example.demo2.dal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Values computed from files, keyed by canonical path and valid as long as the file's size and
+ * modification time are unchanged. Entries saved by an earlier run are passed in up front, so a
+ * lookup costs one stat of the file; new entries are handed to a store, which writes them behind.
+ */
+final class FileStampCache<V> {
+    /** Value computed from a file when it had the given size and modification time (epoch millis). */
+    record Entry<V>(long size, long modified, V value) {}
+
+    /** Computes the value from the file's contents. */
+    @FunctionalInterface
+    interface Compute<V> {
+        V apply(Path file) throws IOException;
+    }
+
+    /** Persists a new entry for the canonical path. */
+    @FunctionalInterface
+    interface Store<V> {
+        void save(String path, Entry<V> entry);
+    }
+
+    private final Map<String, Entry<V>> entries;
+    private final Compute<V> compute;
+    private final Store<V> store;
+
+    FileStampCache(Map<String, Entry<V>> saved, Compute<V> compute, Store<V> store) {
+        this.entries = new ConcurrentHashMap<>(saved);
+        this.compute = compute;
+        this.store = store;
+    }
+
+    /** The value for the file, computed only when not cached for its current size and mtime. */
+    V get(Path file) throws IOException {
+        Path real = file.toRealPath();
+        BasicFileAttributes attrs = Files.readAttributes(real, BasicFileAttributes.class);
+        String key = real.toString();
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        Entry<V> cached = entries.get(key);
+        if (cached != null && cached.size() == size && cached.modified() == modified) return cached.value();
+
+        Entry<V> entry = new Entry<>(size, modified, compute.apply(real));
+        entries.put(key, entry);
+        store.save(key, entry);
+        return entry.value();
+    }
+}
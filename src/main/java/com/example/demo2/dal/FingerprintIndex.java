@@ -0,0 +1,23 @@
+package com.example.demo2.dal;
+
+import com.example.demo2.media.AudioFingerprinter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Audio fingerprints remembered across runs in the local store, see {@link FileStampCache}, so only
+ * new or changed files are hashed again.
+ */
+public final class FingerprintIndex {
+    private static final LocalDataStore LOCAL_STORE = LocalDataStore.getInstance();
+    private static final FileStampCache<String> CACHE =
+            new FileStampCache<>(LOCAL_STORE.loadFingerprints(), AudioFingerprinter::fingerprint, LOCAL_STORE::saveFingerprint);
+
+    private FingerprintIndex() {}
+
+    /** The file's audio fingerprint, hashed only when not known for its current size and mtime. */
+    public static String fingerprint(Path file) throws IOException {
+        return CACHE.get(file);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.demo2.dal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Hi/lo id allocation shared by the SQL Server, SQLite and in-memory paths.
+ * Ids are handed out from a block reserved in the database's id_sequences table with one
+ * statement, so a batch of rows needs no per-row key fetch. The current block is remembered in
+ * the local store; offline, allocation continues from it and, once it is used up, from a local
+ * block placed after both the last server block and the highest id stored locally. Every server
+ * reservation is raised to start past the ids used so far, so blocks taken offline are never
+ * handed out again once the server is back.
+ */
+final class IdAllocator {
+    private static final int BLOCK_SIZE = 100;
+
+    /** Reserves blocks in the database's id_sequences table. */
+    @FunctionalInterface
+    interface BlockSource {
+        /** First id of a block of {@code size} ids starting at {@code minNext} or later; throws when offline. */
+        int reserve(String sequence, int minNext, int size) throws SQLException;
+    }
+
+    /** Local side of allocation: the saved current block and the highest id stored locally. */
+    interface LocalIds {
+        int[] loadBlock(String sequence);
+
+        void saveBlock(String sequence, int next, int end);
+
+        int maxId(String table);
+    }
+
+    private static final LocalIds LOCAL_STORE = new LocalIds() {
+        @Override
+        public int[] loadBlock(String sequence) {
+            return LocalDataStore.getInstance().loadIdBlock(sequence);
+        }
+
+        @Override
+        public void saveBlock(String sequence, int next, int end) {
+            LocalDataStore.getInstance().saveIdBlock(sequence, next, end);
+        }
+
+        @Override
+        public int maxId(String table) {
+            return LocalDataStore.getInstance().maxId(table);
+        }
+    };
+
+    static final IdAllocator SONGS = new IdAllocator("songs", LOCAL_STORE, IdAllocator::reserveOnServer);
+    static final IdAllocator PLAYLISTS = new IdAllocator("playlists", LOCAL_STORE, IdAllocator::reserveOnServer);
+
+    private final String sequence; // also the name of the table the ids are for
+    private final LocalIds local;
+    private final BlockSource server;
+    private int next;
+    private int end; // block is [next, end)
+    private boolean loaded;
+
+    IdAllocator(String sequence, LocalIds local, BlockSource server) {
+        this.sequence = sequence;
+        this.local = local;
+        this.server = server;
+    }
+
+    synchronized int next() {
+        return allocate(1)[0];
+    }
+
+    /** {@code count} unused ids, ascending; contiguous unless a block boundary falls inside. */
+    synchronized int[] allocate(int count) {
+        if (!loaded) restore();
+        int[] ids = new int[count];
+        int i = 0;
+        while (i < count) {
+            if (next >= end) refill(count - i);
+            while (i < count && next < end) ids[i++] = next++;
+        }
+        local.saveBlock(sequence, next, end);
+        return ids;
+    }
+
+    private void restore() {
+        loaded = true;
+        int[] block = local.loadBlock(sequence);
+        if (block == null) return;
+        // rows may have been committed after the last saved block position
+        next = Math.max(block[0], local.maxId(sequence) + 1);
+        end = Math.max(block[1], next);
+    }
+
+    private void refill(int wanted) {
+        int size = Math.max(BLOCK_SIZE, wanted);
+        // every id below this has been handed out, possibly from a local block the server never saw
+        int minNext = Math.max(end, local.maxId(sequence) + 1);
+        try {
+            int reserved = server.reserve(sequence, minNext, size);
+            next = Math.max(reserved, minNext);
+            end = Math.max(reserved + size, next);
+            if (next < end) return;
+        } catch (SQLException e) {
+            // continue with a local block
+        }
+        next = minNext;
+        end = next + size;
+    }
+
+    private static int reserveOnServer(String sequence, int minNext, int size) throws SQLException {
+        if (!DBManager.isAvailable()) throw new SQLException("Database is not available");
+        try (Connection c = DBManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(DBManager.dialect().reserveIdBlock())) {
+            ps.setInt(1, minNext);
+            ps.setInt(2, size);
+            ps.setString(3, sequence);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("No id sequence named " + sequence);
+                return rs.getInt(1);
+            }
+        }
+    }
+}
@@ -1,23 +1,59 @@
 package com.example.demo2.dal;
 
+import com.example.demo2.entities.LibrarySnapshot;
 import com.example.demo2.entities.Playlist;
+import com.example.demo2.entities.PlaylistEntry;
 import com.example.demo2.entities.Song;
 
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Offline copy of the library, safe to use from the FX thread and background workers at once.
+ * Readers never lock: they work on immutable snapshots (sorted song/playlist lists, per-playlist
+ * id lists) that writers replace. Writers serialize per song or per playlist through striped locks.
+ * Ids are stored unboxed: tables are {@link ConcurrentIntObjectMap}s and playlist membership is an
+ * {@link IntList} per playlist, next to a parallel list of the sparse {@link OrderKeys} each entry
+ * is persisted under, so inserts, removes and moves rewrite one local row instead of the tail.
+ * A reverse index (song id to the ids of playlists holding it, once per occurrence) makes song
+ * deletion and "which playlists contain this song" proportional to the song's memberships.
+ * Song search goes through a {@link TrigramIndex} that is kept in step with the songs table and
+ * saved next to the local database on exit, so it is not rebuilt at every startup.
+ * New ids come from the shared {@link IdAllocator}, so they never clash with ids handed out online.
+ * Lock order is playlist stripe before song stripe.
+ * Stored songs and playlists are never changed in place: writes store a copy of the object passed
+ * in, and callers that want to change one pass a new object to an update method.
+ */
 public class InMemoryStore {
+    private static final int LOCK_STRIPES = 64;
+    private static final Path SEARCH_INDEX_PATH = Path.of(System.getProperty("user.home"), ".mytunes", "songs.trigram");
+    private static final Comparator<Song> BY_TITLE =
+            Comparator.comparing(Song::getTitle, String.CASE_INSENSITIVE_ORDER).thenComparing(Song::getId);
+    private static final Comparator<Playlist> BY_NAME =
+            Comparator.comparing(Playlist::getName, String.CASE_INSENSITIVE_ORDER).thenComparing(Playlist::getId);
+    // after the constants above, which the constructor reads
     private static final InMemoryStore INSTANCE = new InMemoryStore();
-    private final Map<Integer, Song> songs = new HashMap<>();
-    private final Map<Integer, Playlist> playlists = new HashMap<>();
-    private final Map<Integer, List<Integer>> playlistSongs = new HashMap<>();
-    private final AtomicInteger songIdCounter = new AtomicInteger(1);
-    private final AtomicInteger playlistIdCounter = new AtomicInteger(1);
+
+    private final ConcurrentIntObjectMap<Song> songs = new ConcurrentIntObjectMap<>();
+    private final ConcurrentIntObjectMap<Playlist> playlists = new ConcurrentIntObjectMap<>();
+    // values are immutable, replaced under the playlist's lock
+    private final ConcurrentIntObjectMap<IntList> playlistSongs = new ConcurrentIntObjectMap<>();
+    // ordering key of each entry in playlistSongs, same index; replaced together with it
+    private final ConcurrentIntObjectMap<IntList> playlistKeys = new ConcurrentIntObjectMap<>();
+    // song id -> playlist ids, one entry per occurrence; updated under the song's lock
+    private final ConcurrentIntObjectMap<IntList> songPlaylists = new ConcurrentIntObjectMap<>();
+    private final Object[] songLocks = newLocks();
+    private final Object[] playlistLocks = newLocks();
+    private final TrigramIndex songIndex = new TrigramIndex();
+    private final SnapshotCache<Song> songsSnapshot = new SnapshotCache<>(() -> sortedCopy(songs, BY_TITLE));
+    private final SnapshotCache<Playlist> playlistsSnapshot = new SnapshotCache<>(() -> sortedCopy(playlists, BY_NAME));
     private final LocalDataStore localStore = LocalDataStore.getInstance();
 
     private InMemoryStore() {
         loadFromLocalStore();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> songIndex.save(SEARCH_INDEX_PATH), "search-index-save"));
     }
 
     public static InMemoryStore getInstance() {
@@ -28,131 +64,469 @@ public class InMemoryStore {
         List<Song> loadedSongs = localStore.loadSongs();
         for (Song s : loadedSongs) {
             songs.put(s.getId(), s);
-            if (s.getId() >= songIdCounter.get()) {
-                songIdCounter.set(s.getId() + 1);
-            }
         }
 
+        songIndex.loadOrBuild(SEARCH_INDEX_PATH, loadedSongs);
+
         List<Playlist> loadedPlaylists = localStore.loadPlaylists();
         for (Playlist p : loadedPlaylists) {
             playlists.put(p.getId(), p);
-            if (p.getId() >= playlistIdCounter.get()) {
-                playlistIdCounter.set(p.getId() + 1);
-            }
         }
 
-        playlistSongs.putAll(localStore.loadPlaylistSongs());
+        localStore.loadPlaylistSongs().forEach((playlistId, rows) -> {
+            playlistSongs.put(playlistId, rows.songIds());
+            playlistKeys.put(playlistId, rows.orderKeys());
+            rows.songIds().forEach(songId -> indexMembership(songId, playlistId));
+        });
     }
 
+    /** Immutable snapshot ordered by title. */
     public List<Song> getAllSongs() {
-        return new ArrayList<>(songs.values());
+        return songsSnapshot.get();
+    }
+
+    /** View of the title-ordered snapshot: up to {@code limit} songs after {@code after}, or from the start. */
+    public List<Song> getSongsPage(Song after, int limit) {
+        List<Song> all = getAllSongs();
+        int from = 0;
+        if (after != null) {
+            int at = Collections.binarySearch(all, after, BY_TITLE);
+            from = at >= 0 ? at + 1 : -at - 1;
+        }
+        return all.subList(from, Math.min(all.size(), from + limit));
     }
 
     public Song insertSong(Song song) {
-        int id = songIdCounter.getAndIncrement();
+        return insertSong(song, IdAllocator.SONGS.next());
+    }
+
+    public List<Song> insertSongs(List<Song> batch) {
+        int[] ids = IdAllocator.SONGS.allocate(batch.size());
+        for (int i = 0; i < ids.length; i++) insertSong(batch.get(i), ids[i]);
+        return batch;
+    }
+
+    private Song insertSong(Song song, int id) {
         song.setId(id);
-        songs.put(id, song);
-        localStore.saveSong(song);
+        Song stored = copyOf(song);
+        synchronized (lockFor(songLocks, id)) {
+            songs.put(id, stored);
+            songIndex.put(stored);
+            localStore.saveSong(stored);
+        }
+        songsSnapshot.invalidate();
         return song;
     }
 
+    private static Song copyOf(Song s) {
+        return new Song(s.getId(), s.getTitle(), s.getArtist(), s.getDurationSeconds(), s.getFilePath());
+    }
+
     public void updateSong(Song song) {
         if (song.getId() != null) {
-            songs.put(song.getId(), song);
-            localStore.saveSong(song);
+            Song stored = copyOf(song);
+            synchronized (lockFor(songLocks, song.getId())) {
+                songs.put(song.getId(), stored);
+                songIndex.put(stored);
+                localStore.saveSong(stored);
+            }
+            songsSnapshot.invalidate();
         }
     }
 
+    /** Sets the duration of each stored song to that of the given song with the same id. */
+    public void updateDurations(List<Song> batch) {
+        for (Song d : batch) {
+            synchronized (lockFor(songLocks, d.getId())) {
+                Song current = songs.get(d.getId());
+                if (current == null) continue;
+                // replaced rather than changed, songs handed out before may be on screen
+                Song updated = new Song(current.getId(), current.getTitle(), current.getArtist(),
+                        d.getDurationSeconds(), current.getFilePath());
+                songs.put(updated.getId(), updated);
+                localStore.saveSong(updated);
+            }
+        }
+        songsSnapshot.invalidate();
+    }
+
     public boolean deleteSong(int id) {
-        boolean existed = songs.remove(id) != null;
-        playlistSongs.values().forEach(list -> list.remove(Integer.valueOf(id)));
-        localStore.deleteSong(id);
+        boolean existed;
+        IntList memberships;
+        synchronized (lockFor(songLocks, id)) {
+            existed = songs.remove(id) != null;
+            songIndex.remove(id);
+            memberships = songPlaylists.remove(id);
+            localStore.deleteSong(id);
+        }
+        songsSnapshot.invalidate();
+        if (memberships != null) {
+            int[] playlistIds = memberships.toArray();
+            Arrays.sort(playlistIds);
+            for (int i = 0; i < playlistIds.length; i++) {
+                if (i > 0 && playlistIds[i] == playlistIds[i - 1]) continue;
+                int playlistId = playlistIds[i];
+                synchronized (lockFor(playlistLocks, playlistId)) {
+                    IntList list = playlistSongs.get(playlistId);
+                    if (list == null) continue;
+                    IntList keys = playlistKeys.get(playlistId);
+                    for (int pos = list.size() - 1; pos >= 0; pos--) {
+                        if (list.get(pos) != id) continue;
+                        localStore.deletePlaylistSong(playlistId, keys.get(pos));
+                        list = list.removeAt(pos);
+                        keys = keys.removeAt(pos);
+                    }
+                    playlistSongs.put(playlistId, list);
+                    playlistKeys.put(playlistId, keys);
+                }
+            }
+        }
         return existed;
     }
 
+    /** Points the playlist entries of each duplicate at the survivor, then deletes the duplicates. */
+    public void mergeSongs(int survivorId, List<Integer> duplicateIds) {
+        for (int id : duplicateIds) {
+            IntList memberships;
+            synchronized (lockFor(songLocks, id)) {
+                memberships = songPlaylists.remove(id);
+            }
+            if (memberships != null) {
+                int[] playlistIds = memberships.toArray();
+                Arrays.sort(playlistIds);
+                for (int i = 0; i < playlistIds.length; i++) {
+                    if (i > 0 && playlistIds[i] == playlistIds[i - 1]) continue;
+                    int playlistId = playlistIds[i];
+                    synchronized (lockFor(playlistLocks, playlistId)) {
+                        IntList list = playlistSongs.get(playlistId);
+                        if (list == null) continue;
+                        IntList keys = playlistKeys.get(playlistId);
+                        for (int pos = 0; pos < list.size(); pos++) {
+                            if (list.get(pos) != id) continue;
+                            list = list.set(pos, survivorId);
+                            indexMembership(survivorId, playlistId);
+                            localStore.savePlaylistSong(playlistId, keys.get(pos), survivorId);
+                        }
+                        playlistSongs.put(playlistId, list);
+                    }
+                }
+            }
+            deleteSong(id);
+        }
+    }
+
     public Song searchSongById(int id) {
         return songs.get(id);
     }
 
+    /** Songs whose title or artist contains the query, ignoring case, ordered by title. */
     public List<Song> searchSongs(String query) {
-        String lower = query.toLowerCase();
-        return songs.values().stream()
-                .filter(s -> s.getTitle().toLowerCase().contains(lower) ||
-                           s.getArtist().toLowerCase().contains(lower))
-                .sorted(Comparator.comparing(Song::getTitle))
-                .collect(Collectors.toList());
+        if (query.isEmpty()) return getAllSongs();
+        int[] ids = songIndex.search(query);
+        if (ids.length > songs.size() / 4) {
+            // a large share of the library matches: filtering the sorted snapshot beats sorting
+            return getAllSongs().stream()
+                    .filter(s -> Arrays.binarySearch(ids, s.getId()) >= 0)
+                    .toList();
+        }
+        List<Song> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Song s = songs.get(id);
+            if (s != null) result.add(s);
+        }
+        result.sort(BY_TITLE);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Offline search with relevance ranking: full-text matches from the local store, best first,
+     * followed by the remaining substring matches (words matched in the middle) ordered by title.
+     */
+    public List<Song> searchSongsRanked(String query) {
+        List<Song> result = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int id : localStore.searchSongIds(query)) {
+            Song s = songs.get(id);
+            if (s != null && seen.add(id)) result.add(s);
+        }
+        for (Song s : searchSongs(query)) {
+            if (!seen.contains(s.getId())) result.add(s);
+        }
+        return Collections.unmodifiableList(result);
     }
 
+    /** Whether {@link #searchSongsRanked} would find the song for the query. */
+    public boolean matchesRanked(Song s, String query) {
+        return TrigramIndex.matches(s, query) || localStore.matchesFullText(query, s.getTitle(), s.getArtist());
+    }
+
+    /** Playlists containing the song at least once, ordered by name. */
+    public List<Playlist> getPlaylistsContaining(int songId) {
+        IntList memberships = songPlaylists.getOrDefault(songId, IntList.EMPTY);
+        int[] playlistIds = memberships.toArray();
+        Arrays.sort(playlistIds);
+        List<Playlist> result = new ArrayList<>();
+        for (int i = 0; i < playlistIds.length; i++) {
+            if (i > 0 && playlistIds[i] == playlistIds[i - 1]) continue;
+            Playlist p = playlists.get(playlistIds[i]);
+            if (p != null) result.add(p);
+        }
+        result.sort(BY_NAME);
+        return result;
+    }
+
+    /** Immutable snapshot ordered by name. */
     public List<Playlist> getAllPlaylists() {
-        return new ArrayList<>(playlists.values());
+        return playlistsSnapshot.get();
     }
 
     public Playlist insertPlaylist(Playlist playlist) {
-        int id = playlistIdCounter.getAndIncrement();
+        return insertPlaylist(playlist, IdAllocator.PLAYLISTS.next());
+    }
+
+    public List<Playlist> insertPlaylists(List<Playlist> batch) {
+        int[] ids = IdAllocator.PLAYLISTS.allocate(batch.size());
+        for (int i = 0; i < ids.length; i++) insertPlaylist(batch.get(i), ids[i]);
+        return batch;
+    }
+
+    private Playlist insertPlaylist(Playlist playlist, int id) {
         playlist.setId(id);
-        playlists.put(id, playlist);
-        playlistSongs.put(id, new ArrayList<>());
-        localStore.savePlaylist(playlist);
+        Playlist stored = new Playlist(id, playlist.getName());
+        synchronized (lockFor(playlistLocks, id)) {
+            playlists.put(id, stored);
+            playlistSongs.put(id, IntList.EMPTY);
+            playlistKeys.put(id, IntList.EMPTY);
+            localStore.savePlaylist(stored);
+        }
+        playlistsSnapshot.invalidate();
         return playlist;
     }
 
     public void updatePlaylist(Playlist playlist) {
         if (playlist.getId() != null) {
-            playlists.put(playlist.getId(), playlist);
-            localStore.savePlaylist(playlist);
+            Playlist stored = new Playlist(playlist.getId(), playlist.getName());
+            synchronized (lockFor(playlistLocks, playlist.getId())) {
+                playlists.put(playlist.getId(), stored);
+                localStore.savePlaylist(stored);
+            }
+            playlistsSnapshot.invalidate();
         }
     }
 
     public boolean deletePlaylist(int id) {
-        playlistSongs.remove(id);
-        localStore.clearAllPlaylistSongs(id);
-        localStore.deletePlaylist(id);
-        return playlists.remove(id) != null;
+        boolean existed;
+        synchronized (lockFor(playlistLocks, id)) {
+            IntList removed = playlistSongs.remove(id);
+            playlistKeys.remove(id);
+            if (removed != null) removed.forEach(songId -> unindexMembership(songId, id));
+            localStore.clearAllPlaylistSongs(id);
+            localStore.deletePlaylist(id);
+            existed = playlists.remove(id) != null;
+        }
+        playlistsSnapshot.invalidate();
+        return existed;
     }
 
     public List<Song> getPlaylistSongs(int playlistId) {
-        List<Integer> songIds = playlistSongs.getOrDefault(playlistId, new ArrayList<>());
-        return songIds.stream()
-                .map(songs::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        IntList songIds = playlistSongs.getOrDefault(playlistId, IntList.EMPTY);
+        List<Song> result = new ArrayList<>(songIds.size());
+        for (int i = 0; i < songIds.size(); i++) {
+            Song s = songs.get(songIds.get(i));
+            if (s != null) result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Current snapshots of songs and playlists with each playlist's contents, limited to songs
+     * in the song snapshot so no entry points at a song the caller cannot see.
+     */
+    public LibrarySnapshot getLibrarySnapshot() {
+        List<Song> allSongs = getAllSongs();
+        List<Playlist> allPlaylists = getAllPlaylists();
+        ConcurrentIntObjectMap<Song> visible = new ConcurrentIntObjectMap<>();
+        for (Song s : allSongs) visible.put(s.getId(), s);
+        Map<Integer, List<Song>> contents = new HashMap<>();
+        for (Playlist p : allPlaylists) {
+            IntList songIds = playlistSongs.getOrDefault(p.getId(), IntList.EMPTY);
+            List<Song> list = new ArrayList<>(songIds.size());
+            songIds.forEach(id -> {
+                Song s = visible.get(id);
+                if (s != null) list.add(s);
+            });
+            contents.put(p.getId(), list);
+        }
+        return new LibrarySnapshot(allSongs, allPlaylists, contents);
+    }
+
+    /** Up to {@code limit} entries after the one with order key {@code afterKey}, or from the start. */
+    public List<PlaylistEntry> getPlaylistEntries(int playlistId, Integer afterKey, int limit) {
+        IntList songIds;
+        IntList keys;
+        // the two lists are replaced separately; the lock gives a matching pair
+        synchronized (lockFor(playlistLocks, playlistId)) {
+            songIds = playlistSongs.getOrDefault(playlistId, IntList.EMPTY);
+            keys = playlistKeys.getOrDefault(playlistId, IntList.EMPTY);
+        }
+        int from = 0;
+        if (afterKey != null) {
+            int at = keys.binarySearch(afterKey);
+            from = at >= 0 ? at + 1 : -at - 1;
+        }
+        List<PlaylistEntry> result = new ArrayList<>(Math.min(limit, songIds.size()));
+        for (int i = from; i < songIds.size() && result.size() < limit; i++) {
+            Song s = songs.get(songIds.get(i));
+            if (s != null) result.add(new PlaylistEntry(keys.get(i), s));
+        }
+        return result;
     }
 
     public void addSongToPlaylist(int playlistId, int songId) {
-        List<Integer> list = playlistSongs.computeIfAbsent(playlistId, k -> new ArrayList<>());
-        int position = list.size();
-        list.add(songId);
-        localStore.savePlaylistSong(playlistId, position, songId);
+        synchronized (lockFor(playlistLocks, playlistId)) {
+            appendLocked(playlistId, songId);
+        }
+    }
+
+    public void addSongsToPlaylist(int playlistId, List<Integer> songIds) {
+        synchronized (lockFor(playlistLocks, playlistId)) {
+            for (int songId : songIds) appendLocked(playlistId, songId);
+        }
+    }
+
+    private void appendLocked(int playlistId, int songId) {
+        IntList list = playlistSongs.getOrDefault(playlistId, IntList.EMPTY);
+        IntList keys = playlistKeys.getOrDefault(playlistId, IntList.EMPTY);
+        int key = OrderKeys.between(keys.isEmpty() ? null : keys.get(keys.size() - 1), null);
+        if (key == OrderKeys.NONE) {
+            keys = renumber(playlistId, list);
+            key = OrderKeys.atIndex(list.size());
+        }
+        playlistSongs.put(playlistId, list.append(songId));
+        playlistKeys.put(playlistId, keys.append(key));
+        indexMembership(songId, playlistId);
+        localStore.savePlaylistSong(playlistId, key, songId);
     }
 
     public void removeSongFromPlaylist(int playlistId, int position) {
-        List<Integer> list = playlistSongs.get(playlistId);
-        if (list != null && position >= 0 && position < list.size()) {
-            list.remove(position);
-            localStore.deletePlaylistSong(playlistId, position);
-            for (int i = position; i < list.size(); i++) {
-                localStore.savePlaylistSong(playlistId, i, list.get(i));
+        synchronized (lockFor(playlistLocks, playlistId)) {
+            IntList current = playlistSongs.get(playlistId);
+            if (current != null && position >= 0 && position < current.size()) {
+                IntList keys = playlistKeys.get(playlistId);
+                playlistSongs.put(playlistId, current.removeAt(position));
+                playlistKeys.put(playlistId, keys.removeAt(position));
+                unindexMembership(current.get(position), playlistId);
+                localStore.deletePlaylistSong(playlistId, keys.get(position));
             }
         }
     }
 
     public void movePlaylistSong(int playlistId, int fromPos, int toPos) {
-        List<Integer> list = playlistSongs.get(playlistId);
-        if (list != null && fromPos >= 0 && fromPos < list.size() && toPos >= 0 && toPos < list.size()) {
-            int songId = list.remove(fromPos);
-            list.add(toPos, songId);
-            localStore.clearAllPlaylistSongs(playlistId);
-            for (int i = 0; i < list.size(); i++) {
-                localStore.savePlaylistSong(playlistId, i, list.get(i));
+        synchronized (lockFor(playlistLocks, playlistId)) {
+            IntList current = playlistSongs.get(playlistId);
+            if (current != null && fromPos >= 0 && fromPos < current.size() && toPos >= 0 && toPos < current.size()) {
+                if (fromPos == toPos) return;
+                IntList list = current.move(fromPos, toPos);
+                IntList keys = playlistKeys.get(playlistId);
+                int oldKey = keys.get(fromPos);
+                IntList rest = keys.removeAt(fromPos);
+                int newKey = OrderKeys.between(toPos > 0 ? rest.get(toPos - 1) : null,
+                        toPos < rest.size() ? rest.get(toPos) : null);
+                playlistSongs.put(playlistId, list);
+                if (newKey == OrderKeys.NONE) {
+                    renumber(playlistId, list);
+                } else {
+                    playlistKeys.put(playlistId, rest.insertAt(toPos, newKey));
+                    localStore.deletePlaylistSong(playlistId, oldKey);
+                    localStore.savePlaylistSong(playlistId, newKey, list.get(toPos));
+                }
             }
         }
     }
 
+    /** Respaces a playlist's keys and rewrites its local rows; caller holds the playlist lock. */
+    private IntList renumber(int playlistId, IntList songIds) {
+        int[] keys = new int[songIds.size()];
+        localStore.clearAllPlaylistSongs(playlistId);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = OrderKeys.atIndex(i);
+            localStore.savePlaylistSong(playlistId, keys[i], songIds.get(i));
+        }
+        IntList result = IntList.of(keys);
+        playlistKeys.put(playlistId, result);
+        return result;
+    }
+
     public void clear() {
         songs.clear();
         playlists.clear();
         playlistSongs.clear();
-        songIdCounter.set(1);
-        playlistIdCounter.set(1);
+        playlistKeys.clear();
+        songPlaylists.clear();
+        songIndex.clear();
+        songsSnapshot.invalidate();
+        playlistsSnapshot.invalidate();
+    }
+
+    private void indexMembership(int songId, int playlistId) {
+        synchronized (lockFor(songLocks, songId)) {
+            songPlaylists.put(songId, songPlaylists.getOrDefault(songId, IntList.EMPTY).append(playlistId));
+        }
+    }
+
+    private void unindexMembership(int songId, int playlistId) {
+        synchronized (lockFor(songLocks, songId)) {
+            IntList memberships = songPlaylists.get(songId);
+            if (memberships == null) return;
+            IntList updated = memberships.removeFirst(playlistId);
+            if (updated.isEmpty()) songPlaylists.remove(songId);
+            else if (updated != memberships) songPlaylists.put(songId, updated);
+        }
+    }
+
+    private static Object[] newLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+        return locks;
+    }
+
+    private static Object lockFor(Object[] locks, int id) {
+        return locks[Math.floorMod(id, locks.length)];
+    }
+
+    private static <T> List<T> sortedCopy(ConcurrentIntObjectMap<T> values, Comparator<? super T> order) {
+        List<T> list = new ArrayList<>(values.size());
+        values.forEachValue(list::add);
+        list.sort(order);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Lazily rebuilt immutable view. Writers bump the version after changing the source map;
+     * a snapshot is reused only while it was built from the current version.
+     */
+    private static final class SnapshotCache<T> {
+        private record Versioned<T>(long version, List<T> items) {}
+
+        private final Supplier<List<T>> builder;
+        private final AtomicLong version = new AtomicLong();
+        private volatile Versioned<T> current;
+
+        SnapshotCache(Supplier<List<T>> builder) {
+            this.builder = builder;
+        }
+
+        List<T> get() {
+            long v = version.get();
+            Versioned<T> c = current;
+            if (c != null && c.version() == v) return c.items();
+            List<T> items = builder.get();
+            current = new Versioned<>(v, items);
+            return items;
+        }
+
+        void invalidate() {
+            version.incrementAndGet();
+        }
     }
 }
@@ -0,0 +1,138 @@
+package com.example.demo2.dal;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable list of primitive ints with cheap appends.
+ * Every "modification" returns a new list; appends write into spare capacity of the shared
+ * backing array when no other version has claimed that slot yet, so a run of appends costs
+ * amortized O(1) while older versions stay valid for concurrent readers.
+ */
+final class IntList {
+    static final IntList EMPTY = new IntList(new int[0], 0, new AtomicInteger());
+
+    private final int[] data;
+    private final int size;
+    private final AtomicInteger claimed; // how much of data is used by some version, shared by all versions on data
+
+    private IntList(int[] data, int size, AtomicInteger claimed) {
+        this.data = data;
+        this.size = size;
+        this.claimed = claimed;
+    }
+
+    static IntList of(int... values) {
+        if (values.length == 0) return EMPTY;
+        int[] copy = values.clone();
+        return new IntList(copy, copy.length, new AtomicInteger(copy.length));
+    }
+
+    private static IntList wrap(int[] data, int size) {
+        return size == 0 ? EMPTY : new IntList(data, size, new AtomicInteger(size));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return data[index];
+    }
+
+    int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == value) return i;
+        }
+        return -1;
+    }
+
+    /** Same contract as {@link Arrays#binarySearch(int[], int)}; the list must be sorted. */
+    int binarySearch(int value) {
+        return Arrays.binarySearch(data, 0, size, value);
+    }
+
+    boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) action.accept(data[i]);
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    IntList append(int value) {
+        if (size < data.length && claimed.compareAndSet(size, size + 1)) {
+            data[size] = value;
+            return new IntList(data, size + 1, claimed);
+        }
+        int[] grown = Arrays.copyOf(data, Math.max(8, size + (size >> 1) + 1));
+        grown[size] = value;
+        return new IntList(grown, size + 1, new AtomicInteger(size + 1));
+    }
+
+    IntList insertAt(int index, int value) {
+        if (index == size) return append(value);
+        if (index < 0 || index > size) throw new IndexOutOfBoundsException(index);
+        int[] copy = new int[size + 1];
+        System.arraycopy(data, 0, copy, 0, index);
+        copy[index] = value;
+        System.arraycopy(data, index, copy, index + 1, size - index);
+        return wrap(copy, copy.length);
+    }
+
+    IntList removeAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int[] copy = new int[size - 1];
+        System.arraycopy(data, 0, copy, 0, index);
+        System.arraycopy(data, index + 1, copy, index, size - index - 1);
+        return wrap(copy, copy.length);
+    }
+
+    IntList set(int index, int value) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int[] copy = Arrays.copyOf(data, size);
+        copy[index] = value;
+        return wrap(copy, size);
+    }
+
+    /** Moves the element at {@code from} so that it ends up at index {@code to}. */
+    IntList move(int from, int to) {
+        if (from < 0 || from >= size) throw new IndexOutOfBoundsException(from);
+        if (to < 0 || to >= size) throw new IndexOutOfBoundsException(to);
+        if (from == to) return this;
+        int[] copy = Arrays.copyOf(data, size);
+        int value = copy[from];
+        if (from < to) System.arraycopy(copy, from + 1, copy, from, to - from);
+        else System.arraycopy(copy, to, copy, to + 1, from - to);
+        copy[to] = value;
+        return wrap(copy, size);
+    }
+
+    /** Removes the first occurrence of {@code value}; returns this list if there is none. */
+    IntList removeFirst(int value) {
+        int index = indexOf(value);
+        return index < 0 ? this : removeAt(index);
+    }
+
+    /** Removes every occurrence of {@code value}; returns this list if there is none. */
+    IntList removeAll(int value) {
+        int first = indexOf(value);
+        if (first < 0) return this;
+        int[] copy = new int[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (data[i] != value) copy[n++] = data[i];
+        }
+        return wrap(copy, n);
+    }
+}
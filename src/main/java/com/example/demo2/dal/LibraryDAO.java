@@ -0,0 +1,118 @@
+package com.example.demo2.dal;
+
+import com.example.demo2.entities.LibrarySnapshot;
+import com.example.demo2.entities.Playlist;
+import com.example.demo2.entities.Song;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Reads the whole library as one consistent snapshot.
+ * On SQL Server the three queries go out as a single batch returning three result sets under
+ * snapshot isolation, so a cold load is one round trip; databases without ALLOW_SNAPSHOT_ISOLATION
+ * get the same batch under SERIALIZABLE. On SQLite the queries share one read transaction.
+ * Falls back to in-memory storage when database is unavailable.
+ */
+public class LibraryDAO {
+    private static volatile boolean snapshotIsolation = true; // cleared once the server refuses it
+
+    private final InMemoryStore memoryStore = InMemoryStore.getInstance();
+    private final SqlDialect dialect = DBManager.dialect();
+
+    public LibrarySnapshot load() throws SQLException {
+        if (!DBManager.isAvailable()) {
+            return memoryStore.getLibrarySnapshot();
+        }
+        String songsSql = "SELECT id, title, artist, duration_seconds, file_path FROM songs " +
+                "ORDER BY " + dialect.caseInsensitive("title") + ", id";
+        String playlistsSql = "SELECT id, name FROM playlists ORDER BY " + dialect.caseInsensitive("name") + ", id";
+        String entriesSql = "SELECT playlist_id, song_id FROM playlist_songs ORDER BY playlist_id, position";
+        try (Connection c = DBManager.getConnection()) {
+            if (dialect == SqlDialect.SQL_SERVER) {
+                String batch = songsSql + "; " + playlistsSql + "; " + entriesSql;
+                if (snapshotIsolation) {
+                    try {
+                        return inTransaction(c, SQLServerConnection.TRANSACTION_SNAPSHOT, () -> readBatch(c, batch));
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() != 3952) throw e; // snapshot isolation not enabled on the database
+                        snapshotIsolation = false;
+                    }
+                }
+                return inTransaction(c, Connection.TRANSACTION_SERIALIZABLE, () -> readBatch(c, batch));
+            }
+            return inTransaction(c, Connection.TRANSACTION_SERIALIZABLE, () -> {
+                try (Statement st = c.createStatement()) {
+                    List<Song> songs = readSongs(st.executeQuery(songsSql));
+                    List<Playlist> playlists = readPlaylists(st.executeQuery(playlistsSql));
+                    return new LibrarySnapshot(songs, playlists, readEntries(st.executeQuery(entriesSql), songs));
+                }
+            });
+        } catch (SQLException e) {
+            return memoryStore.getLibrarySnapshot();
+        }
+    }
+
+    private interface Read {
+        LibrarySnapshot run() throws SQLException;
+    }
+
+    private static LibrarySnapshot inTransaction(Connection c, int isolation, Read read) throws SQLException {
+        int previous = c.getTransactionIsolation();
+        c.setTransactionIsolation(isolation);
+        c.setAutoCommit(false);
+        try {
+            LibrarySnapshot snapshot = read.run();
+            c.commit();
+            return snapshot;
+        } catch (SQLException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+            c.setTransactionIsolation(previous);
+        }
+    }
+
+    private static LibrarySnapshot readBatch(Connection c, String batch) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            if (!st.execute(batch)) throw new SQLException("Library batch returned no result set");
+            List<Song> songs = readSongs(st.getResultSet());
+            st.getMoreResults();
+            List<Playlist> playlists = readPlaylists(st.getResultSet());
+            st.getMoreResults();
+            return new LibrarySnapshot(songs, playlists, readEntries(st.getResultSet(), songs));
+        }
+    }
+
+    private static List<Song> readSongs(ResultSet rs) throws SQLException {
+        try (rs) {
+            List<Song> songs = new ArrayList<>();
+            while (rs.next()) songs.add(SongDAO.map(rs));
+            return songs;
+        }
+    }
+
+    private static List<Playlist> readPlaylists(ResultSet rs) throws SQLException {
+        try (rs) {
+            List<Playlist> playlists = new ArrayList<>();
+            while (rs.next()) playlists.add(new Playlist(rs.getInt("id"), rs.getString("name")));
+            return playlists;
+        }
+    }
+
+    /** Playlist contents resolved against the songs read in the same snapshot. */
+    private static Map<Integer, List<Song>> readEntries(ResultSet rs, List<Song> songs) throws SQLException {
+        Map<Integer, Song> byId = new HashMap<>(songs.size() * 2);
+        for (Song s : songs) byId.put(s.getId(), s);
+        try (rs) {
+            Map<Integer, List<Song>> entries = new HashMap<>();
+            while (rs.next()) {
+                Song s = byId.get(rs.getInt("song_id"));
+                if (s != null) entries.computeIfAbsent(rs.getInt("playlist_id"), k -> new ArrayList<>()).add(s);
+            }
+            return entries;
+        }
+    }
+}
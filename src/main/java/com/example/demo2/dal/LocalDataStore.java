@@ -2,14 +2,30 @@ package com.example.demo2.dal;
 
 import com.example.demo2.entities.Playlist;
 import com.example.demo2.entities.Song;
+import com.example.demo2.media.MediaMetadata;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.text.Normalizer;
 import java.util.*;
 
+/**
+ * Local SQLite mirror of the library used in offline mode.
+ * Reads go straight to SQLite; writes are queued on a {@link WriteBehindWriter} and committed in
+ * group transactions, so callers never wait for an fsync. Reads flush pending writes first.
+ * Song titles and artists are mirrored into an FTS5 table by triggers for ranked offline search.
+ */
 public class LocalDataStore {
-    private static final LocalDataStore INSTANCE = new LocalDataStore();
     private static final String DB_PATH = System.getProperty("user.home") + "/.mytunes/local_data.db";
+    private static final int WRITE_BATCH_SIZE = 500;
+    private static final long WRITE_DELAY_MILLIS = 50;
+    // after the constants above, which the constructor reads
+    private static final LocalDataStore INSTANCE = new LocalDataStore();
     private Connection dbConnection;
+    private WriteBehindWriter writer;
+    private boolean fullTextSearch;
 
     private LocalDataStore() {
         initializeDatabase();
@@ -22,14 +38,40 @@ public class LocalDataStore {
     private void initializeDatabase() {
         try {
             Class.forName("org.sqlite.JDBC");
+            Files.createDirectories(Path.of(DB_PATH).getParent());
             String url = "jdbc:sqlite:" + DB_PATH;
             dbConnection = DriverManager.getConnection(url);
+            try (Statement st = dbConnection.createStatement()) {
+                // WAL lets the reader connection run while the writer commits
+                st.execute("PRAGMA journal_mode=WAL");
+            }
             createTables();
-        } catch (ClassNotFoundException | SQLException e) {
+            Connection writeConnection = DriverManager.getConnection(url);
+            try (Statement st = writeConnection.createStatement()) {
+                st.execute("PRAGMA synchronous=NORMAL");
+            }
+            writer = new WriteBehindWriter(writeConnection, WRITE_BATCH_SIZE, WRITE_DELAY_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close, "local-store-shutdown"));
+        } catch (ClassNotFoundException | SQLException | IOException e) {
             System.err.println("Failed to initialize local data store: " + e.getMessage());
         }
     }
 
+    /** Wait until all queued writes are committed. */
+    public void flush() {
+        if (writer != null) writer.flush();
+    }
+
+    /** Commit queued writes and stop the background writer. */
+    public void close() {
+        if (writer != null) writer.close();
+    }
+
+    private void enqueue(String key, String scope, String clears, String sql, WriteBehindWriter.Binder binder) {
+        if (writer == null) return;
+        writer.submit(new WriteBehindWriter.Mutation(key, scope, clears, sql, binder));
+    }
+
     private void createTables() throws SQLException {
         try (Statement st = dbConnection.createStatement()) {
             st.executeUpdate("CREATE TABLE IF NOT EXISTS songs (" +
@@ -50,11 +92,69 @@ public class LocalDataStore {
                     "PRIMARY KEY (playlist_id, position), " +
                     "FOREIGN KEY (playlist_id) REFERENCES playlists(id) ON DELETE CASCADE, " +
                     "FOREIGN KEY (song_id) REFERENCES songs(id) ON DELETE CASCADE)");
+
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_playlist_songs_song_id ON playlist_songs(song_id)");
+
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS id_blocks (" +
+                    "name TEXT PRIMARY KEY, " +
+                    "next_value INTEGER NOT NULL, " +
+                    "end_value INTEGER NOT NULL)");
+
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS media_metadata (" +
+                    "path TEXT PRIMARY KEY, " +
+                    "size INTEGER NOT NULL, " +
+                    "modified INTEGER NOT NULL, " +
+                    "duration_millis INTEGER NOT NULL, " +
+                    "title TEXT, " +
+                    "artist TEXT, " +
+                    "album TEXT, " +
+                    "bitrate_kbps INTEGER NOT NULL)");
+
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS audio_fingerprints (" +
+                    "path TEXT PRIMARY KEY, " +
+                    "size INTEGER NOT NULL, " +
+                    "modified INTEGER NOT NULL, " +
+                    "fingerprint TEXT NOT NULL)");
+
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audio_fingerprints_fingerprint ON audio_fingerprints(fingerprint)");
+        }
+        createFullTextIndex();
+    }
+
+    /**
+     * External-content FTS5 table over songs, kept in step by triggers. Songs are written with an
+     * upsert rather than INSERT OR REPLACE, since REPLACE deletes do not fire the delete trigger.
+     */
+    private void createFullTextIndex() {
+        try (Statement st = dbConnection.createStatement()) {
+            boolean exists;
+            try (ResultSet rs = st.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'songs_fts'")) {
+                exists = rs.next();
+            }
+            st.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS songs_fts USING fts5(" +
+                    "title, artist, content='songs', content_rowid='id', " +
+                    "tokenize='unicode61 remove_diacritics 2', prefix='2 3')");
+            st.executeUpdate("CREATE TRIGGER IF NOT EXISTS songs_fts_insert AFTER INSERT ON songs BEGIN " +
+                    "INSERT INTO songs_fts(rowid, title, artist) VALUES (new.id, new.title, new.artist); END");
+            st.executeUpdate("CREATE TRIGGER IF NOT EXISTS songs_fts_delete AFTER DELETE ON songs BEGIN " +
+                    "INSERT INTO songs_fts(songs_fts, rowid, title, artist) VALUES ('delete', old.id, old.title, old.artist); END");
+            st.executeUpdate("CREATE TRIGGER IF NOT EXISTS songs_fts_update AFTER UPDATE OF title, artist ON songs BEGIN " +
+                    "INSERT INTO songs_fts(songs_fts, rowid, title, artist) VALUES ('delete', old.id, old.title, old.artist); " +
+                    "INSERT INTO songs_fts(rowid, title, artist) VALUES (new.id, new.title, new.artist); END");
+            if (!exists) {
+                // songs stored before the index existed
+                st.executeUpdate("INSERT INTO songs_fts(songs_fts) VALUES ('rebuild')");
+            }
+            fullTextSearch = true;
+        } catch (SQLException e) {
+            System.err.println("Full-text search unavailable: " + e.getMessage());
         }
     }
 
     public List<Song> loadSongs() {
         List<Song> songs = new ArrayList<>();
+        if (dbConnection == null) return songs;
+        flush();
         String sql = "SELECT id, title, artist, duration_seconds, file_path FROM songs";
         try (PreparedStatement ps = dbConnection.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
@@ -74,31 +174,186 @@ public class LocalDataStore {
     }
 
     public void saveSong(Song song) {
-        String sql = "INSERT OR REPLACE INTO songs(id, title, artist, duration_seconds, file_path) VALUES(?, ?, ?, ?, ?)";
+        int id = song.getId();
+        String title = song.getTitle();
+        String artist = song.getArtist();
+        int duration = song.getDurationSeconds();
+        String filePath = song.getFilePath();
+        enqueue("song:" + id, null, null,
+                SqlDialect.SQLITE.upsert("songs", List.of("id"), List.of("title", "artist", "duration_seconds", "file_path")),
+                ps -> {
+                    ps.setInt(1, id);
+                    ps.setString(2, title);
+                    ps.setString(3, artist);
+                    ps.setInt(4, duration);
+                    ps.setString(5, filePath);
+                });
+    }
+
+    public void deleteSong(int id) {
+        enqueue("song:" + id, null, null, "DELETE FROM songs WHERE id = ?", ps -> ps.setInt(1, id));
+    }
+
+    /**
+     * Ids of songs matching every word of the query as a prefix of a title or artist word,
+     * best bm25 match first (title weighs more than artist). Empty if full-text search is unavailable.
+     */
+    public List<Integer> searchSongIds(String query) {
+        List<Integer> ids = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (dbConnection == null || !fullTextSearch || match.isEmpty()) return ids;
+        flush();
+        String sql = "SELECT rowid FROM songs_fts WHERE songs_fts MATCH ? ORDER BY bm25(songs_fts, 10.0, 5.0)";
         try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, song.getId());
-            ps.setString(2, song.getTitle());
-            ps.setString(3, song.getArtist());
-            ps.setInt(4, song.getDurationSeconds());
-            ps.setString(5, song.getFilePath());
-            ps.executeUpdate();
+            ps.setString(1, match);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
         } catch (SQLException e) {
-            System.err.println("Error saving song: " + e.getMessage());
+            System.err.println("Error searching songs: " + e.getMessage());
         }
+        return ids;
     }
 
-    public void deleteSong(int id) {
-        String sql = "DELETE FROM songs WHERE id = ?";
-        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            ps.executeUpdate();
+    /**
+     * Whether {@link #searchSongIds} would find a song with these fields for the query: every query
+     * word starts some word of a field, ignoring case and diacritics as the FTS5 tokenizer does.
+     */
+    boolean matchesFullText(String query, String... fields) {
+        if (!fullTextSearch) return false;
+        List<String> words = new ArrayList<>();
+        for (String field : fields) words.addAll(words(field));
+        List<String> wanted = words(query);
+        if (wanted.isEmpty()) return false;
+        for (String w : wanted) {
+            if (words.stream().noneMatch(word -> word.startsWith(w))) return false;
+        }
+        return true;
+    }
+
+    private static List<String> words(String text) {
+        if (text == null) return List.of();
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKD)
+                .replaceAll("\\p{M}+", "").toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    /** Quotes each word as an FTS5 string and makes it a prefix query, so user input is never parsed as syntax. */
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            if (!match.isEmpty()) match.append(' ');
+            match.append('"').append(word).append("\"*");
+        }
+        return match.toString();
+    }
+
+    /** The id block last saved for the sequence as {next, end}, or null. */
+    int[] loadIdBlock(String sequence) {
+        if (dbConnection == null) return null;
+        flush();
+        try (PreparedStatement ps = dbConnection.prepareStatement("SELECT next_value, end_value FROM id_blocks WHERE name = ?")) {
+            ps.setString(1, sequence);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new int[]{rs.getInt(1), rs.getInt(2)} : null;
+            }
         } catch (SQLException e) {
-            System.err.println("Error deleting song: " + e.getMessage());
+            System.err.println("Error loading id block: " + e.getMessage());
+            return null;
+        }
+    }
+
+    void saveIdBlock(String sequence, int next, int end) {
+        enqueue("id_block:" + sequence, null, null,
+                SqlDialect.SQLITE.upsert("id_blocks", List.of("name"), List.of("next_value", "end_value")), ps -> {
+                    ps.setString(1, sequence);
+                    ps.setInt(2, next);
+                    ps.setInt(3, end);
+                });
+    }
+
+    Map<String, FileStampCache.Entry<MediaMetadata>> loadMetadata() {
+        Map<String, FileStampCache.Entry<MediaMetadata>> entries = new HashMap<>();
+        if (dbConnection == null) return entries;
+        flush();
+        String sql = "SELECT path, size, modified, duration_millis, title, artist, album, bitrate_kbps FROM media_metadata";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                MediaMetadata metadata = new MediaMetadata(rs.getLong("duration_millis"), rs.getString("title"),
+                        rs.getString("artist"), rs.getString("album"), rs.getInt("bitrate_kbps"));
+                entries.put(rs.getString("path"), new FileStampCache.Entry<>(rs.getLong("size"), rs.getLong("modified"), metadata));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading media metadata: " + e.getMessage());
+        }
+        return entries;
+    }
+
+    void saveMetadata(String path, FileStampCache.Entry<MediaMetadata> entry) {
+        MediaMetadata m = entry.value();
+        enqueue("metadata:" + path, null, null, SqlDialect.SQLITE.upsert("media_metadata", List.of("path"),
+                List.of("size", "modified", "duration_millis", "title", "artist", "album", "bitrate_kbps")), ps -> {
+                    ps.setString(1, path);
+                    ps.setLong(2, entry.size());
+                    ps.setLong(3, entry.modified());
+                    ps.setLong(4, m.durationMillis());
+                    ps.setString(5, m.title());
+                    ps.setString(6, m.artist());
+                    ps.setString(7, m.album());
+                    ps.setInt(8, m.bitrateKbps());
+                });
+    }
+
+    Map<String, FileStampCache.Entry<String>> loadFingerprints() {
+        Map<String, FileStampCache.Entry<String>> entries = new HashMap<>();
+        if (dbConnection == null) return entries;
+        flush();
+        String sql = "SELECT path, size, modified, fingerprint FROM audio_fingerprints";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                entries.put(rs.getString("path"),
+                        new FileStampCache.Entry<>(rs.getLong("size"), rs.getLong("modified"), rs.getString("fingerprint")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading audio fingerprints: " + e.getMessage());
+        }
+        return entries;
+    }
+
+    void saveFingerprint(String path, FileStampCache.Entry<String> entry) {
+        enqueue("fingerprint:" + path, null, null, SqlDialect.SQLITE.upsert("audio_fingerprints", List.of("path"),
+                List.of("size", "modified", "fingerprint")), ps -> {
+                    ps.setString(1, path);
+                    ps.setLong(2, entry.size());
+                    ps.setLong(3, entry.modified());
+                    ps.setString(4, entry.value());
+                });
+    }
+
+    /** Highest id stored in the table ("songs" or "playlists"), 0 when empty. */
+    int maxId(String table) {
+        if (dbConnection == null) return 0;
+        flush();
+        try (Statement st = dbConnection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            System.err.println("Error reading max id: " + e.getMessage());
+            return 0;
         }
     }
 
     public List<Playlist> loadPlaylists() {
         List<Playlist> playlists = new ArrayList<>();
+        if (dbConnection == null) return playlists;
+        flush();
         String sql = "SELECT id, name FROM playlists";
         try (PreparedStatement ps = dbConnection.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
@@ -112,35 +367,34 @@ public class LocalDataStore {
     }
 
     public void savePlaylist(Playlist playlist) {
-        String sql = "INSERT OR REPLACE INTO playlists(id, name) VALUES(?, ?)";
-        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, playlist.getId());
-            ps.setString(2, playlist.getName());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error saving playlist: " + e.getMessage());
-        }
+        int id = playlist.getId();
+        String name = playlist.getName();
+        enqueue("playlist:" + id, null, null, "INSERT OR REPLACE INTO playlists(id, name) VALUES(?, ?)", ps -> {
+            ps.setInt(1, id);
+            ps.setString(2, name);
+        });
     }
 
     public void deletePlaylist(int id) {
-        String sql = "DELETE FROM playlists WHERE id = ?";
-        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error deleting playlist: " + e.getMessage());
-        }
+        enqueue("playlist:" + id, null, null, "DELETE FROM playlists WHERE id = ?", ps -> ps.setInt(1, id));
     }
 
-    public Map<Integer, List<Integer>> loadPlaylistSongs() {
-        Map<Integer, List<Integer>> playlistSongs = new HashMap<>();
-        String sql = "SELECT playlist_id, song_id FROM playlist_songs ORDER BY position";
+    /** Song ids of one playlist in order, with the ordering key each one is stored under. */
+    record PlaylistRows(IntList songIds, IntList orderKeys) {}
+
+    Map<Integer, PlaylistRows> loadPlaylistSongs() {
+        Map<Integer, PlaylistRows> playlistSongs = new HashMap<>();
+        if (dbConnection == null) return playlistSongs;
+        flush();
+        String sql = "SELECT playlist_id, position, song_id FROM playlist_songs ORDER BY playlist_id, position";
         try (PreparedStatement ps = dbConnection.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
                 int playlistId = rs.getInt("playlist_id");
+                int orderKey = rs.getInt("position");
                 int songId = rs.getInt("song_id");
-                playlistSongs.computeIfAbsent(playlistId, k -> new ArrayList<>()).add(songId);
+                PlaylistRows rows = playlistSongs.getOrDefault(playlistId, new PlaylistRows(IntList.EMPTY, IntList.EMPTY));
+                playlistSongs.put(playlistId, new PlaylistRows(rows.songIds().append(songId), rows.orderKeys().append(orderKey)));
             }
         } catch (SQLException e) {
             System.err.println("Error loading playlist songs: " + e.getMessage());
@@ -148,36 +402,25 @@ public class LocalDataStore {
         return playlistSongs;
     }
 
-    public void savePlaylistSong(int playlistId, int position, int songId) {
-        String sql = "INSERT OR REPLACE INTO playlist_songs(playlist_id, position, song_id) VALUES(?, ?, ?)";
-        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, playlistId);
-            ps.setInt(2, position);
-            ps.setInt(3, songId);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error saving playlist song: " + e.getMessage());
-        }
+    public void savePlaylistSong(int playlistId, int orderKey, int songId) {
+        enqueue("playlist_song:" + playlistId + ":" + orderKey, "playlist_songs:" + playlistId, null,
+                SqlDialect.SQLITE.upsert("playlist_songs", List.of("playlist_id", "position"), List.of("song_id")), ps -> {
+                    ps.setInt(1, playlistId);
+                    ps.setInt(2, orderKey);
+                    ps.setInt(3, songId);
+                });
     }
 
-    public void deletePlaylistSong(int playlistId, int position) {
-        String sql = "DELETE FROM playlist_songs WHERE playlist_id = ? AND position = ?";
-        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, playlistId);
-            ps.setInt(2, position);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error deleting playlist song: " + e.getMessage());
-        }
+    public void deletePlaylistSong(int playlistId, int orderKey) {
+        enqueue("playlist_song:" + playlistId + ":" + orderKey, "playlist_songs:" + playlistId, null,
+                "DELETE FROM playlist_songs WHERE playlist_id = ? AND position = ?", ps -> {
+                    ps.setInt(1, playlistId);
+                    ps.setInt(2, orderKey);
+                });
     }
 
     public void clearAllPlaylistSongs(int playlistId) {
-        String sql = "DELETE FROM playlist_songs WHERE playlist_id = ?";
-        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
-            ps.setInt(1, playlistId);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error clearing playlist songs: " + e.getMessage());
-        }
+        enqueue("playlist_songs_clear:" + playlistId, null, "playlist_songs:" + playlistId,
+                "DELETE FROM playlist_songs WHERE playlist_id = ?", ps -> ps.setInt(1, playlistId));
     }
 }
@@ -0,0 +1,25 @@
+package com.example.demo2.dal;
+
+import com.example.demo2.media.MediaMetadata;
+import com.example.demo2.media.MediaMetadataReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Media metadata remembered across runs in the local store, see {@link FileStampCache}. All entries
+ * are read into memory on first use. Files that could not be parsed are remembered too, so they are
+ * not read again until they change.
+ */
+public final class MetadataCache {
+    private static final LocalDataStore LOCAL_STORE = LocalDataStore.getInstance();
+    private static final FileStampCache<MediaMetadata> CACHE =
+            new FileStampCache<>(LOCAL_STORE.loadMetadata(), MediaMetadataReader::read, LOCAL_STORE::saveMetadata);
+
+    private MetadataCache() {}
+
+    /** The file's metadata, read from its headers only when not cached for its current size and mtime. */
+    public static MediaMetadata read(Path file) throws IOException {
+        return CACHE.get(file);
+    }
+}
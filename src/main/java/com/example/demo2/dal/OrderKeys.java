@@ -0,0 +1,35 @@
+package com.example.demo2.dal;
+
+/**
+ * Sparse ordering keys for playlist_songs.position.
+ * Entries are spaced {@link #GAP} apart, so an insert or move takes the midpoint between its
+ * neighbours and writes a single row. When neighbours end up adjacent the playlist is renumbered.
+ */
+final class OrderKeys {
+    static final int GAP = 1024;
+    /** Returned when there is no free key between the neighbours. */
+    static final int NONE = Integer.MIN_VALUE;
+
+    private OrderKeys() {}
+
+    /** Key of the entry at {@code index} after renumbering. */
+    static int atIndex(int index) {
+        return index * GAP;
+    }
+
+    /**
+     * Key for an entry placed between two neighbours; either may be null at the ends of the list.
+     */
+    static int between(Integer prev, Integer next) {
+        if (prev == null && next == null) return 0;
+        if (prev == null) return (long) next - GAP > NONE ? next - GAP : NONE;
+        if (next == null) return (long) prev + GAP <= Integer.MAX_VALUE ? prev + GAP : NONE;
+        long lo = prev, hi = next;
+        return hi - lo >= 2 ? (int) ((lo + hi) >> 1) : NONE;
+    }
+
+    /** True when the space between two neighbours is nearly used up and renumbering is due. */
+    static boolean isTight(Integer prev, Integer next) {
+        return prev != null && next != null && (long) next - prev < 4;
+    }
+}
@@ -1,24 +1,41 @@
 package com.example.demo2.dal;
 
 import com.example.demo2.entities.Playlist;
+import com.example.demo2.entities.PlaylistEntry;
 import com.example.demo2.entities.Song;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 /**
  * DAO for playlists and their song ordering.
  * Falls back to in-memory storage when database is unavailable.
+ * playlist_songs.position holds sparse {@link OrderKeys}; the public API still speaks in list indexes.
  */
 public class PlaylistDAO {
+    private static final ExecutorService RENUMBER_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "playlist-renumber");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final List<BulkRows.Column> BULK_COLUMNS = List.of(
+            new BulkRows.Column("playlist_id", Types.INTEGER, 10),
+            new BulkRows.Column("position", Types.INTEGER, 10),
+            new BulkRows.Column("song_id", Types.INTEGER, 10));
     private final InMemoryStore memoryStore = InMemoryStore.getInstance();
+    private final SqlDialect dialect = DBManager.dialect();
 
     public List<Playlist> findAll() throws SQLException {
         if (!DBManager.isAvailable()) {
             return memoryStore.getAllPlaylists();
         }
-        String sql = "SELECT id, name FROM playlists ORDER BY name COLLATE NOCASE";
+        String sql = "SELECT id, name FROM playlists ORDER BY " + dialect.caseInsensitive("name") + ", id";
         try (Connection c = DBManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
@@ -31,20 +48,39 @@ public class PlaylistDAO {
     }
 
     public Playlist insert(Playlist p) throws SQLException {
+        return insertAll(List.of(p)).get(0);
+    }
+
+    /** Inserts the playlists in one transaction and one JDBC batch, with ids from {@link IdAllocator}. */
+    public List<Playlist> insertAll(List<Playlist> batch) throws SQLException {
+        if (batch.isEmpty()) return batch;
         if (!DBManager.isAvailable()) {
-            return memoryStore.insertPlaylist(p);
+            return memoryStore.insertPlaylists(batch);
         }
-        String sql = "INSERT INTO playlists(name) VALUES(?)";
+        DBManager.checkExplicitIds("playlists");
+        String sql = dialect.insertWithId("playlists", List.of("id", "name"));
+        int[] ids = IdAllocator.PLAYLISTS.allocate(batch.size());
         try (Connection c = DBManager.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, p.getName());
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) p.setId(keys.getInt(1));
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            c.setAutoCommit(false);
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    ps.setInt(1, ids[i]);
+                    ps.setString(2, batch.get(i).getName());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (SQLException ex) {
+                c.rollback();
+                throw ex;
+            } finally {
+                c.setAutoCommit(true);
             }
-            return p;
+            for (int i = 0; i < ids.length; i++) batch.get(i).setId(ids[i]);
+            return batch;
         } catch (SQLException e) {
-            return memoryStore.insertPlaylist(p);
+            return memoryStore.insertPlaylists(batch);
         }
     }
 
@@ -105,27 +141,126 @@ public class PlaylistDAO {
         }
     }
 
+    /**
+     * Up to {@code limit} entries of the playlist after the entry with order key {@code afterKey}
+     * (null for the first page).
+     */
+    public List<PlaylistEntry> getEntriesPage(int playlistId, Integer afterKey, int limit) throws SQLException {
+        if (!DBManager.isAvailable()) {
+            return memoryStore.getPlaylistEntries(playlistId, afterKey, limit);
+        }
+        String sql = "SELECT ps.position, s.id, s.title, s.artist, s.duration_seconds, s.file_path " +
+                "FROM playlist_songs ps JOIN songs s ON ps.song_id = s.id " +
+                "WHERE ps.playlist_id=? AND ps.position > ? ORDER BY ps.position" + dialect.limit();
+        try (Connection c = DBManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, playlistId);
+            ps.setInt(2, afterKey == null ? OrderKeys.NONE : afterKey);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<PlaylistEntry> list = new ArrayList<>(limit);
+                while (rs.next()) list.add(new PlaylistEntry(rs.getInt("position"), SongDAO.map(rs)));
+                return list;
+            }
+        } catch (SQLException e) {
+            return memoryStore.getPlaylistEntries(playlistId, afterKey, limit);
+        }
+    }
+
+    /**
+     * The playlist's songs in order, read {@code fetchSize} rows at a time while the stream is consumed.
+     * The stream holds a pooled connection until it is closed.
+     */
+    public Stream<Song> streamSongs(int playlistId, int fetchSize) throws SQLException {
+        if (!DBManager.isAvailable()) {
+            return memoryStore.getPlaylistSongs(playlistId).stream();
+        }
+        String sql = "SELECT s.id, s.title, s.artist, s.duration_seconds, s.file_path " +
+                "FROM playlist_songs ps JOIN songs s ON ps.song_id = s.id " +
+                "WHERE ps.playlist_id=? ORDER BY ps.position";
+        try {
+            return ResultStreams.query(DBManager.getConnection(), sql, fetchSize,
+                    ps -> ps.setInt(1, playlistId), SongDAO::map);
+        } catch (SQLException e) {
+            return memoryStore.getPlaylistSongs(playlistId).stream();
+        }
+    }
+
+    /**
+     * Playlists that contain the song at least once, served by the song_id index.
+     */
+    public List<Playlist> findContaining(int songId) throws SQLException {
+        if (!DBManager.isAvailable()) {
+            return memoryStore.getPlaylistsContaining(songId);
+        }
+        String sql = "SELECT p.id, p.name FROM playlists p " +
+                "WHERE EXISTS (SELECT 1 FROM playlist_songs ps WHERE ps.playlist_id = p.id AND ps.song_id = ?) " +
+                "ORDER BY " + dialect.caseInsensitive("p.name") + ", p.id";
+        try (Connection c = DBManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, songId);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Playlist> list = new ArrayList<>();
+                while (rs.next()) list.add(new Playlist(rs.getInt("id"), rs.getString("name")));
+                return list;
+            }
+        } catch (SQLException e) {
+            return memoryStore.getPlaylistsContaining(songId);
+        }
+    }
+
     public void addSongToEnd(int playlistId, int songId) throws SQLException {
+        addSongsToEnd(playlistId, List.of(songId));
+    }
+
+    /**
+     * Appends the songs in order in one transaction: one read of the last key, then one JDBC batch,
+     * or a bulk copy for large lists on SQL Server.
+     */
+    public void addSongsToEnd(int playlistId, List<Integer> songIds) throws SQLException {
+        if (songIds.isEmpty()) return;
         if (!DBManager.isAvailable()) {
-            memoryStore.addSongToPlaylist(playlistId, songId);
+            memoryStore.addSongsToPlaylist(playlistId, songIds);
             return;
         }
-        String maxSql = "SELECT COALESCE(MAX(position), -1) FROM playlist_songs WHERE playlist_id=?";
+        String maxSql = "SELECT MAX(position) FROM playlist_songs WHERE playlist_id=?";
         try (Connection c = DBManager.getConnection();
              PreparedStatement maxPs = c.prepareStatement(maxSql)) {
             c.setAutoCommit(false);
-            int nextPos = 0;
             try {
+                Integer last = null;
                 maxPs.setInt(1, playlistId);
                 try (ResultSet rs = maxPs.executeQuery()) {
-                    if (rs.next()) nextPos = rs.getInt(1) + 1;
+                    if (rs.next()) {
+                        last = rs.getInt(1);
+                        if (rs.wasNull()) last = null;
+                    }
+                }
+                long span = (long) OrderKeys.GAP * songIds.size();
+                if (last != null && last + span > Integer.MAX_VALUE) {
+                    last = OrderKeys.atIndex(renumber(c, playlistId) - 1);
                 }
-                try (PreparedStatement ins = c.prepareStatement(
-                        "INSERT INTO playlist_songs(playlist_id, position, song_id) VALUES(?,?,?)")) {
-                    ins.setInt(1, playlistId);
-                    ins.setInt(2, nextPos);
-                    ins.setInt(3, songId);
-                    ins.executeUpdate();
+                int first = last == null ? 0 : last + OrderKeys.GAP;
+                if (first + span - OrderKeys.GAP > Integer.MAX_VALUE) {
+                    throw new SQLException("Playlist " + playlistId + " cannot hold " + songIds.size() + " more songs");
+                }
+                if (dialect == SqlDialect.SQL_SERVER && songIds.size() >= SongDAO.BULK_COPY_THRESHOLD) {
+                    List<Object[]> rows = new ArrayList<>(songIds.size());
+                    for (int i = 0; i < songIds.size(); i++) {
+                        rows.add(new Object[]{playlistId, first + i * OrderKeys.GAP, songIds.get(i)});
+                    }
+                    BulkRows.copy(c, "playlist_songs", BULK_COLUMNS, rows);
+                } else {
+                    try (PreparedStatement ins = c.prepareStatement(
+                            "INSERT INTO playlist_songs(playlist_id, position, song_id) VALUES(?,?,?)")) {
+                        for (int i = 0; i < songIds.size(); i++) {
+                            ins.setInt(1, playlistId);
+                            ins.setInt(2, first + i * OrderKeys.GAP);
+                            ins.setInt(3, songIds.get(i));
+                            ins.addBatch();
+                        }
+                        ins.executeBatch();
+                    }
                 }
                 c.commit();
             } catch (SQLException ex) {
@@ -135,7 +270,7 @@ public class PlaylistDAO {
                 c.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            memoryStore.addSongToPlaylist(playlistId, songId);
+            memoryStore.addSongsToPlaylist(playlistId, songIds);
         }
     }
 
@@ -144,26 +279,16 @@ public class PlaylistDAO {
             memoryStore.removeSongFromPlaylist(playlistId, position);
             return;
         }
-        try (Connection c = DBManager.getConnection()) {
-            c.setAutoCommit(false);
-            try (PreparedStatement del = c.prepareStatement(
-                    "DELETE FROM playlist_songs WHERE playlist_id=? AND position=?");
-                 PreparedStatement shift = c.prepareStatement(
-                         "UPDATE playlist_songs SET position = position - 1 WHERE playlist_id=? AND position > ?")) {
-                del.setInt(1, playlistId);
-                del.setInt(2, position);
-                del.executeUpdate();
-
-                shift.setInt(1, playlistId);
-                shift.setInt(2, position);
-                shift.executeUpdate();
-                c.commit();
-            } catch (SQLException ex) {
-                c.rollback();
-                throw ex;
-            } finally {
-                c.setAutoCommit(true);
-            }
+        // positions are sparse keys, so removing an entry leaves the rest untouched
+        String sql = "DELETE FROM playlist_songs WHERE playlist_id=? AND position = (" +
+                "SELECT position FROM playlist_songs WHERE playlist_id=? " +
+                "ORDER BY position" + dialect.offsetOne() + ")";
+        try (Connection c = DBManager.getConnection();
+             PreparedStatement del = c.prepareStatement(sql)) {
+            del.setInt(1, playlistId);
+            del.setInt(2, playlistId);
+            del.setInt(3, position);
+            del.executeUpdate();
         } catch (SQLException e) {
             memoryStore.removeSongFromPlaylist(playlistId, position);
         }
@@ -179,36 +304,9 @@ public class PlaylistDAO {
         
         try (Connection c = DBManager.getConnection()) {
             c.setAutoCommit(false);
+            boolean tight;
             try {
-                try (PreparedStatement temp = c.prepareStatement(
-                        "UPDATE playlist_songs SET position=-1 WHERE playlist_id=? AND position=?")) {
-                    temp.setInt(1, playlistId);
-                    temp.setInt(2, fromPos);
-                    temp.executeUpdate();
-                }
-                if (fromPos < toPos) {
-                    try (PreparedStatement shiftDown = c.prepareStatement(
-                            "UPDATE playlist_songs SET position=position-1 WHERE playlist_id=? AND position>? AND position<=?")) {
-                        shiftDown.setInt(1, playlistId);
-                        shiftDown.setInt(2, fromPos);
-                        shiftDown.setInt(3, toPos);
-                        shiftDown.executeUpdate();
-                    }
-                } else {
-                    try (PreparedStatement shiftUp = c.prepareStatement(
-                            "UPDATE playlist_songs SET position=position+1 WHERE playlist_id=? AND position>=? AND position<?")) {
-                        shiftUp.setInt(1, playlistId);
-                        shiftUp.setInt(2, toPos);
-                        shiftUp.setInt(3, fromPos);
-                        shiftUp.executeUpdate();
-                    }
-                }
-                try (PreparedStatement place = c.prepareStatement(
-                        "UPDATE playlist_songs SET position=? WHERE playlist_id=? AND position=-1")) {
-                    place.setInt(1, toPos);
-                    place.setInt(2, playlistId);
-                    place.executeUpdate();
-                }
+                tight = moveEntry(c, playlistId, fromPos, toPos);
                 c.commit();
             } catch (SQLException ex) {
                 c.rollback();
@@ -216,8 +314,90 @@ public class PlaylistDAO {
             } finally {
                 c.setAutoCommit(true);
             }
+            if (tight) scheduleRenumber(playlistId);
         } catch (SQLException e) {
             memoryStore.movePlaylistSong(playlistId, fromPos, toPos);
         }
     }
+
+    /**
+     * Gives the entry at {@code fromPos} the key between its new neighbours: one row update.
+     * Renumbers inline only when the neighbours are adjacent.
+     *
+     * @return true when little space is left around the new key
+     */
+    private static boolean moveEntry(Connection c, int playlistId, int fromPos, int toPos) throws SQLException {
+        // neighbours in the list as it looks once the entry is taken out
+        int prevIdx = fromPos < toPos ? toPos : toPos - 1;
+        int nextIdx = fromPos < toPos ? toPos + 1 : toPos;
+        Map<Integer, Integer> keys = keysAt(c, playlistId, fromPos, prevIdx, nextIdx);
+        if (!keys.containsKey(fromPos)) return false;
+        int newKey = OrderKeys.between(keys.get(prevIdx), keys.get(nextIdx));
+        if (newKey == OrderKeys.NONE) {
+            renumber(c, playlistId);
+            keys = keysAt(c, playlistId, fromPos, prevIdx, nextIdx);
+            newKey = OrderKeys.between(keys.get(prevIdx), keys.get(nextIdx));
+        }
+        try (PreparedStatement place = c.prepareStatement(
+                "UPDATE playlist_songs SET position=? WHERE playlist_id=? AND position=?")) {
+            place.setInt(1, newKey);
+            place.setInt(2, playlistId);
+            place.setInt(3, keys.get(fromPos));
+            place.executeUpdate();
+        }
+        return OrderKeys.isTight(keys.get(prevIdx), keys.get(nextIdx));
+    }
+
+    /** Ordering keys of the entries at the given list indexes, in one round trip. */
+    private static Map<Integer, Integer> keysAt(Connection c, int playlistId, int a, int b, int d) throws SQLException {
+        String sql = "SELECT rn, position FROM (" +
+                "SELECT position, ROW_NUMBER() OVER (ORDER BY position) - 1 AS rn " +
+                "FROM playlist_songs WHERE playlist_id=?) t WHERE rn IN (?,?,?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, playlistId);
+            ps.setInt(2, a);
+            ps.setInt(3, b);
+            ps.setInt(4, d);
+            Map<Integer, Integer> keys = new HashMap<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) keys.put(rs.getInt(1), rs.getInt(2));
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Respaces a playlist's keys to multiples of {@link OrderKeys#GAP}.
+     *
+     * @return number of entries in the playlist
+     */
+    private static int renumber(Connection c, int playlistId) throws SQLException {
+        int updated = 0;
+        for (String sql : DBManager.dialect().renumberPlaylist(OrderKeys.GAP)) {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setInt(1, playlistId);
+                updated = ps.executeUpdate();
+            }
+        }
+        return updated;
+    }
+
+    private static void scheduleRenumber(int playlistId) {
+        RENUMBER_EXECUTOR.execute(() -> {
+            try (Connection c = DBManager.getConnection()) {
+                c.setAutoCommit(false);
+                try {
+                    renumber(c, playlistId);
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                } finally {
+                    c.setAutoCommit(true);
+                }
+            } catch (SQLException ignored) {
+                // retried inline by the next move that runs out of space
+            }
+        });
+    }
 }
@@ -0,0 +1,70 @@
+package com.example.demo2.dal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily mapped query results. The stream owns the connection, statement and result set and
+ * releases them when closed, so callers must close it (try-with-resources); rows are read from
+ * the driver {@code fetchSize} at a time as the stream is consumed.
+ */
+final class ResultStreams {
+    interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private ResultStreams() {}
+
+    /** Runs the query on {@code c}, taking ownership of the connection even if this throws. */
+    static <T> Stream<T> query(Connection c, String sql, int fetchSize, Binder binder, RowMapper<T> mapper)
+            throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs;
+        try {
+            ps = c.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            binder.bind(ps);
+            rs = ps.executeQuery();
+        } catch (SQLException e) {
+            close(null, ps, c);
+            throw e;
+        }
+        PreparedStatement statement = ps;
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) return false;
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error reading query results", e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> close(rs, statement, c));
+    }
+
+    private static void close(ResultSet rs, PreparedStatement ps, Connection c) {
+        for (AutoCloseable resource : new AutoCloseable[]{rs, ps, c}) {
+            if (resource == null) continue;
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // keep releasing the rest
+            }
+        }
+    }
+}
@@ -5,19 +5,36 @@ import com.example.demo2.entities.Song;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * DAO for CRUD operations on songs table.
  * Falls back to in-memory storage when database is unavailable.
  */
 public class SongDAO {
+    /** From this many rows on, SQL Server inserts go through bulk copy instead of a JDBC batch. */
+    static final int BULK_COPY_THRESHOLD = 1_000;
+    /** Rows read or songs filtered between checks of a search's cancellation flag. */
+    private static final int CANCEL_CHECK_INTERVAL = 1_024;
+    private static final List<BulkRows.Column> BULK_COLUMNS = List.of(
+            new BulkRows.Column("id", Types.INTEGER, 10),
+            new BulkRows.Column("title", Types.NVARCHAR, 255),
+            new BulkRows.Column("artist", Types.NVARCHAR, 255),
+            new BulkRows.Column("duration_seconds", Types.INTEGER, 10),
+            new BulkRows.Column("file_path", Types.LONGNVARCHAR, Integer.MAX_VALUE));
+
     private final InMemoryStore memoryStore = InMemoryStore.getInstance();
+    private final SqlDialect dialect = DBManager.dialect();
 
     public List<Song> findAll() throws SQLException {
         if (!DBManager.isAvailable()) {
             return memoryStore.getAllSongs();
         }
-        String sql = "SELECT id, title, artist, duration_seconds, file_path FROM songs ORDER BY title COLLATE NOCASE";
+        String sql = "SELECT id, title, artist, duration_seconds, file_path FROM songs " +
+                "ORDER BY " + dialect.caseInsensitive("title") + ", id";
         try (Connection c = DBManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
@@ -29,45 +46,172 @@ public class SongDAO {
         }
     }
 
+    /**
+     * Up to {@code limit} songs in title order that come after {@code after} (null for the first page).
+     * Seeks on (title, id), so every page costs the same however deep it is.
+     */
+    public List<Song> findPage(Song after, int limit) throws SQLException {
+        if (!DBManager.isAvailable()) {
+            return memoryStore.getSongsPage(after, limit);
+        }
+        String title = dialect.caseInsensitive("title");
+        String sql = "SELECT id, title, artist, duration_seconds, file_path FROM songs " +
+                (after == null ? "" : "WHERE " + title + " > ? OR (" + title + " = ? AND id > ?) ") +
+                "ORDER BY " + title + ", id" + dialect.limit();
+        try (Connection c = DBManager.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) {
+                ps.setString(i++, after.getTitle());
+                ps.setString(i++, after.getTitle());
+                ps.setInt(i++, after.getId());
+            }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Song> list = new ArrayList<>(limit);
+                while (rs.next()) list.add(map(rs));
+                return list;
+            }
+        } catch (SQLException e) {
+            return memoryStore.getSongsPage(after, limit);
+        }
+    }
+
+    /**
+     * All songs in title order, read {@code fetchSize} rows at a time while the stream is consumed.
+     * The stream holds a pooled connection until it is closed.
+     */
+    public Stream<Song> streamAll(int fetchSize) throws SQLException {
+        if (!DBManager.isAvailable()) {
+            return memoryStore.getAllSongs().stream();
+        }
+        String sql = "SELECT id, title, artist, duration_seconds, file_path FROM songs " +
+                "ORDER BY " + dialect.caseInsensitive("title") + ", id";
+        try {
+            return ResultStreams.query(DBManager.getConnection(), sql, fetchSize, ps -> {}, SongDAO::map);
+        } catch (SQLException e) {
+            return memoryStore.getAllSongs().stream();
+        }
+    }
+
     public List<Song> search(String query) throws SQLException {
+        return search(query, () -> false);
+    }
+
+    /**
+     * Same as {@link #search(String)}, but gives up with a {@link CancellationException} once
+     * {@code cancelled} reports true, checked while rows are read.
+     */
+    public List<Song> search(String query, BooleanSupplier cancelled) throws SQLException {
         if (!DBManager.isAvailable()) {
-            return memoryStore.searchSongs(query);
+            return memoryStore.searchSongsRanked(query);
         }
         String like = "%" + query + "%";
         String sql = "SELECT id, title, artist, duration_seconds, file_path FROM songs " +
-                "WHERE title LIKE ? OR artist LIKE ? ORDER BY title COLLATE NOCASE";
+                "WHERE title LIKE ? OR artist LIKE ? ORDER BY " + dialect.caseInsensitive("title") + ", id";
         try (Connection c = DBManager.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, like);
             ps.setString(2, like);
             try (ResultSet rs = ps.executeQuery()) {
                 List<Song> list = new ArrayList<>();
-                while (rs.next()) list.add(map(rs));
+                while (rs.next()) {
+                    if (list.size() % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                        throw new CancellationException();
+                    }
+                    list.add(map(rs));
+                }
                 return list;
             }
         } catch (SQLException e) {
-            return memoryStore.searchSongs(query);
+            return memoryStore.searchSongsRanked(query);
         }
     }
 
+    /**
+     * Whether the results of searching {@code previousQuery} hold every result for {@code query},
+     * so {@link #narrow} can stand in for {@link #search}: the query must extend the previous one
+     * and, since the online search passes it to LIKE, contain no LIKE wildcards.
+     */
+    public static boolean canNarrow(String previousQuery, String query) {
+        if (previousQuery == null || previousQuery.isBlank() || query == null) return false;
+        if (query.indexOf('%') >= 0 || query.indexOf('_') >= 0 || query.indexOf('[') >= 0) return false;
+        return query.regionMatches(true, 0, previousQuery, 0, previousQuery.length());
+    }
+
+    /**
+     * The songs of {@code previous}, the results for a query {@link #canNarrow narrowable} to
+     * {@code query}, that searching {@code query} would return, in their previous order: ranked
+     * offline results stay ranked. Works in memory, matching as the current search path does.
+     */
+    public List<Song> narrow(List<Song> previous, String query, BooleanSupplier cancelled) {
+        Predicate<Song> matches = DBManager.isAvailable()
+                ? s -> TrigramIndex.matches(s, query)
+                : s -> memoryStore.matchesRanked(s, query);
+        List<Song> kept = new ArrayList<>();
+        for (int i = 0; i < previous.size(); i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) throw new CancellationException();
+            Song s = previous.get(i);
+            if (matches.test(s)) kept.add(s);
+        }
+        return kept;
+    }
+
     public Song insert(Song s) throws SQLException {
+        return insertAll(List.of(s)).get(0);
+    }
+
+    /**
+     * Inserts the songs in one transaction, with ids taken from {@link IdAllocator} up front instead
+     * of fetched back per row. Large batches on SQL Server use bulk copy, others one JDBC batch.
+     */
+    public List<Song> insertAll(List<Song> batch) throws SQLException {
+        if (batch.isEmpty()) return batch;
         if (!DBManager.isAvailable()) {
-            return memoryStore.insertSong(s);
+            return memoryStore.insertSongs(batch);
         }
-        String sql = "INSERT INTO songs(title, artist, duration_seconds, file_path) VALUES(?,?,?,?)";
-        try (Connection c = DBManager.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, s.getTitle());
-            ps.setString(2, s.getArtist());
-            ps.setInt(3, s.getDurationSeconds());
-            ps.setString(4, s.getFilePath());
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) s.setId(keys.getInt(1));
+        DBManager.checkExplicitIds("songs");
+        int[] ids = IdAllocator.SONGS.allocate(batch.size());
+        try (Connection c = DBManager.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                if (dialect == SqlDialect.SQL_SERVER && ids.length >= BULK_COPY_THRESHOLD) {
+                    List<Object[]> rows = new ArrayList<>(ids.length);
+                    for (int i = 0; i < ids.length; i++) {
+                        Song s = batch.get(i);
+                        rows.add(new Object[]{ids[i], s.getTitle(), s.getArtist(), s.getDurationSeconds(), s.getFilePath()});
+                    }
+                    BulkRows.copy(c, "songs", BULK_COLUMNS, rows);
+                } else {
+                    insertBatch(c, batch, ids);
+                }
+                c.commit();
+            } catch (SQLException ex) {
+                c.rollback();
+                throw ex;
+            } finally {
+                c.setAutoCommit(true);
             }
-            return s;
+            for (int i = 0; i < ids.length; i++) batch.get(i).setId(ids[i]);
+            return batch;
         } catch (SQLException e) {
-            return memoryStore.insertSong(s);
+            return memoryStore.insertSongs(batch);
+        }
+    }
+
+    private void insertBatch(Connection c, List<Song> batch, int[] ids) throws SQLException {
+        String sql = dialect.insertWithId("songs", List.of("id", "title", "artist", "duration_seconds", "file_path"));
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < ids.length; i++) {
+                Song s = batch.get(i);
+                ps.setInt(1, ids[i]);
+                ps.setString(2, s.getTitle());
+                ps.setString(3, s.getArtist());
+                ps.setInt(4, s.getDurationSeconds());
+                ps.setString(5, s.getFilePath());
+                ps.addBatch();
+            }
+            ps.executeBatch();
         }
     }
 
@@ -90,6 +234,35 @@ public class SongDAO {
         }
     }
 
+    /** Stores the duration of each song, leaving its other columns alone, in one batch. */
+    public void updateDurations(List<Song> batch) throws SQLException {
+        if (batch.isEmpty()) return;
+        if (!DBManager.isAvailable()) {
+            memoryStore.updateDurations(batch);
+            return;
+        }
+        String sql = "UPDATE songs SET duration_seconds=? WHERE id=?";
+        try (Connection c = DBManager.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (Song s : batch) {
+                    ps.setInt(1, s.getDurationSeconds());
+                    ps.setInt(2, s.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+            } catch (SQLException ex) {
+                c.rollback();
+                throw ex;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            memoryStore.updateDurations(batch);
+        }
+    }
+
     public boolean delete(int id) throws SQLException {
         if (!DBManager.isAvailable()) {
             return memoryStore.deleteSong(id);
@@ -104,7 +277,42 @@ public class SongDAO {
         }
     }
 
-    private static Song map(ResultSet rs) throws SQLException {
+    /**
+     * Points every playlist entry of the duplicates at the survivor and deletes the duplicates,
+     * in one transaction so no playlist is left referencing a removed song.
+     */
+    public void mergeInto(int survivorId, List<Integer> duplicateIds) throws SQLException {
+        if (duplicateIds.isEmpty()) return;
+        if (!DBManager.isAvailable()) {
+            memoryStore.mergeSongs(survivorId, duplicateIds);
+            return;
+        }
+        try (Connection c = DBManager.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement remap = c.prepareStatement("UPDATE playlist_songs SET song_id=? WHERE song_id=?");
+                 PreparedStatement delete = c.prepareStatement("DELETE FROM songs WHERE id=?")) {
+                for (int id : duplicateIds) {
+                    remap.setInt(1, survivorId);
+                    remap.setInt(2, id);
+                    remap.addBatch();
+                    delete.setInt(1, id);
+                    delete.addBatch();
+                }
+                remap.executeBatch();
+                delete.executeBatch();
+                c.commit();
+            } catch (SQLException ex) {
+                c.rollback();
+                throw ex;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            memoryStore.mergeSongs(survivorId, duplicateIds);
+        }
+    }
+
+    static Song map(ResultSet rs) throws SQLException {
         return new Song(
                 rs.getInt("id"),
                 rs.getString("title"),
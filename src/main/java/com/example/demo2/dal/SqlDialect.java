@@ -0,0 +1,242 @@
+package com.example.demo2.dal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The SQL that differs between the backends the DAOs talk to: SQL Server behind {@link DBManager}
+ * and SQLite in {@link LocalDataStore}. Each query is generated for its backend so it succeeds in
+ * one round trip instead of failing over to the in-memory store.
+ */
+enum SqlDialect {
+    SQL_SERVER {
+        @Override
+        List<String> schema() {
+            return List.of(
+                    "IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'songs') " +
+                            "CREATE TABLE songs (" +
+                            "id INT PRIMARY KEY IDENTITY(1,1), " +
+                            "title NVARCHAR(255) NOT NULL, " +
+                            "artist NVARCHAR(255) NOT NULL, " +
+                            "duration_seconds INT NOT NULL DEFAULT 0, " +
+                            "file_path NVARCHAR(MAX) NOT NULL)",
+                    "IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'playlists') " +
+                            "CREATE TABLE playlists (" +
+                            "id INT PRIMARY KEY IDENTITY(1,1), " +
+                            "name NVARCHAR(255) NOT NULL UNIQUE)",
+                    "IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'playlist_songs') " +
+                            "CREATE TABLE playlist_songs (" +
+                            "playlist_id INT NOT NULL, " +
+                            "position INT NOT NULL, " +
+                            "song_id INT NOT NULL, " +
+                            "PRIMARY KEY (playlist_id, position), " +
+                            "FOREIGN KEY (playlist_id) REFERENCES playlists(id) ON DELETE CASCADE, " +
+                            "FOREIGN KEY (song_id) REFERENCES songs(id) ON DELETE CASCADE)",
+                    // reverse lookup for song deletes (cascade) and "playlists containing song"
+                    "IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name = 'IX_playlist_songs_song_id') " +
+                            "CREATE INDEX IX_playlist_songs_song_id ON playlist_songs(song_id)",
+                    // hi/lo id blocks, see IdAllocator; seeded past the ids already in use
+                    "IF NOT EXISTS (SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'id_sequences') " +
+                            "CREATE TABLE id_sequences (" +
+                            "name NVARCHAR(64) PRIMARY KEY, " +
+                            "next_value INT NOT NULL)",
+                    seedSequence("songs"),
+                    seedSequence("playlists"));
+        }
+
+        private String seedSequence(String table) {
+            return "IF NOT EXISTS (SELECT * FROM id_sequences WHERE name = '" + table + "') " +
+                    "INSERT INTO id_sequences(name, next_value) SELECT '" + table + "', ISNULL(MAX(id), 0) + 1 FROM " + table;
+        }
+
+        @Override
+        List<String> sessionSettings() {
+            return List.of();
+        }
+
+        @Override
+        String caseInsensitive(String expression) {
+            // the database default collation is case-insensitive; an explicit COLLATE would stop index seeks
+            return expression;
+        }
+
+        @Override
+        String limit() {
+            return " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+        }
+
+        @Override
+        String offsetOne() {
+            return " OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY";
+        }
+
+        @Override
+        String insertWithId(String table, List<String> columns) {
+            // explicit values for an IDENTITY column; the setting only lasts for this batch and needs
+            // ALTER permission on the table, see DBManager.checkExplicitIds
+            return "SET IDENTITY_INSERT " + table + " ON; " +
+                    "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES(" + placeholders(columns.size()) + "); " +
+                    "SET IDENTITY_INSERT " + table + " OFF";
+        }
+
+        @Override
+        String reserveIdBlock() {
+            return "UPDATE s SET next_value = CASE WHEN s.next_value < v.min_next THEN v.min_next ELSE s.next_value END + v.block_size " +
+                    "OUTPUT inserted.next_value - v.block_size " +
+                    "FROM id_sequences s CROSS JOIN (VALUES(?, ?)) AS v(min_next, block_size) WHERE s.name = ?";
+        }
+
+        @Override
+        List<String> renumberPlaylist(int gap) {
+            // updatable CTE; key uniqueness is only checked once the whole statement has run
+            return List.of("WITH r AS (SELECT position, ROW_NUMBER() OVER (ORDER BY position) - 1 AS rn " +
+                    "FROM playlist_songs WHERE playlist_id = ?) UPDATE r SET position = rn * " + gap);
+        }
+
+        @Override
+        String upsert(String table, List<String> keyColumns, List<String> valueColumns) {
+            List<String> all = concat(keyColumns, valueColumns);
+            return "MERGE INTO " + table + " WITH (HOLDLOCK) AS t " +
+                    "USING (VALUES(" + placeholders(all.size()) + ")) AS s(" + String.join(", ", all) + ") " +
+                    "ON " + join(keyColumns, c -> "t." + c + " = s." + c, " AND ") + " " +
+                    "WHEN MATCHED THEN UPDATE SET " + join(valueColumns, c -> "t." + c + " = s." + c, ", ") + " " +
+                    "WHEN NOT MATCHED THEN INSERT(" + String.join(", ", all) + ") " +
+                    "VALUES(" + join(all, c -> "s." + c, ", ") + ");";
+        }
+    },
+    SQLITE {
+        @Override
+        List<String> schema() {
+            return List.of(
+                    "CREATE TABLE IF NOT EXISTS songs (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "title TEXT NOT NULL, " +
+                            "artist TEXT NOT NULL, " +
+                            "duration_seconds INTEGER NOT NULL DEFAULT 0, " +
+                            "file_path TEXT NOT NULL)",
+                    // case-insensitive like the SQL Server default collation
+                    "CREATE TABLE IF NOT EXISTS playlists (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "name TEXT NOT NULL UNIQUE COLLATE NOCASE)",
+                    "CREATE TABLE IF NOT EXISTS playlist_songs (" +
+                            "playlist_id INTEGER NOT NULL, " +
+                            "position INTEGER NOT NULL, " +
+                            "song_id INTEGER NOT NULL, " +
+                            "PRIMARY KEY (playlist_id, position), " +
+                            "FOREIGN KEY (playlist_id) REFERENCES playlists(id) ON DELETE CASCADE, " +
+                            "FOREIGN KEY (song_id) REFERENCES songs(id) ON DELETE CASCADE)",
+                    "CREATE INDEX IF NOT EXISTS IX_playlist_songs_song_id ON playlist_songs(song_id)",
+                    "CREATE TABLE IF NOT EXISTS id_sequences (" +
+                            "name TEXT PRIMARY KEY, " +
+                            "next_value INTEGER NOT NULL)",
+                    seedSequence("songs"),
+                    seedSequence("playlists"));
+        }
+
+        private String seedSequence(String table) {
+            return "INSERT OR IGNORE INTO id_sequences(name, next_value) SELECT '" + table + "', IFNULL(MAX(id), 0) + 1 FROM " + table;
+        }
+
+        @Override
+        List<String> sessionSettings() {
+            // the cascading deletes above are only enforced with this set, per connection
+            return List.of("PRAGMA foreign_keys = ON");
+        }
+
+        @Override
+        String caseInsensitive(String expression) {
+            return expression + " COLLATE NOCASE";
+        }
+
+        @Override
+        String limit() {
+            return " LIMIT ?";
+        }
+
+        @Override
+        String offsetOne() {
+            return " LIMIT 1 OFFSET ?";
+        }
+
+        @Override
+        String insertWithId(String table, List<String> columns) {
+            return "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES(" + placeholders(columns.size()) + ")";
+        }
+
+        @Override
+        String reserveIdBlock() {
+            return "UPDATE id_sequences SET next_value = MAX(next_value, ?1) + ?2 WHERE name = ?3 RETURNING next_value - ?2";
+        }
+
+        @Override
+        List<String> renumberPlaylist(int gap) {
+            // SQLite checks the primary key row by row, so keys are first moved out of the way into
+            // negatives, which keeps their order reversed, and then ranked into place
+            return List.of("UPDATE playlist_songs SET position = -1 - position WHERE playlist_id = ?1",
+                    "UPDATE playlist_songs SET position = r.rn * " + gap + " " +
+                            "FROM (SELECT position AS old, ROW_NUMBER() OVER (ORDER BY position DESC) - 1 AS rn " +
+                            "FROM playlist_songs WHERE playlist_id = ?1) AS r " +
+                            "WHERE playlist_songs.playlist_id = ?1 AND playlist_songs.position = r.old");
+        }
+
+        @Override
+        String upsert(String table, List<String> keyColumns, List<String> valueColumns) {
+            List<String> all = concat(keyColumns, valueColumns);
+            return "INSERT INTO " + table + "(" + String.join(", ", all) + ") VALUES(" + placeholders(all.size()) + ") " +
+                    "ON CONFLICT(" + String.join(", ", keyColumns) + ") DO UPDATE SET " +
+                    join(valueColumns, c -> c + " = excluded." + c, ", ");
+        }
+    };
+
+    static SqlDialect forUrl(String jdbcUrl) {
+        return jdbcUrl.startsWith("jdbc:sqlite:") ? SQLITE : SQL_SERVER;
+    }
+
+    /** Statements creating the tables and id sequences that are missing; safe to run on every start. */
+    abstract List<String> schema();
+
+    /** Statements run on every new connection before it is used. */
+    abstract List<String> sessionSettings();
+
+    /** The expression as used for case-insensitive ordering and comparison. */
+    abstract String caseInsensitive(String expression);
+
+    /** Appended after ORDER BY; takes the row count as its one parameter. */
+    abstract String limit();
+
+    /** Appended after ORDER BY; selects the single row at the offset given as its one parameter. */
+    abstract String offsetOne();
+
+    /** Insert that supplies the id column itself, with ids from {@link IdAllocator}. */
+    abstract String insertWithId(String table, List<String> columns);
+
+    /**
+     * Advances a row of id_sequences by a block size and returns the first id of the block, first
+     * raising the row to a given minimum. Parameters are the minimum, the block size and the sequence name.
+     */
+    abstract String reserveIdBlock();
+
+    /**
+     * Statements that respace a playlist's position keys to multiples of {@code gap}, keeping their
+     * order. Each takes the playlist id as its only parameter; run them in one transaction.
+     */
+    abstract List<String> renumberPlaylist(int gap);
+
+    /** Insert or update by key; parameters are the key columns followed by the value columns. */
+    abstract String upsert(String table, List<String> keyColumns, List<String> valueColumns);
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static List<String> concat(List<String> a, List<String> b) {
+        return Stream.concat(a.stream(), b.stream()).toList();
+    }
+
+    private static String join(List<String> columns, UnaryOperator<String> f, String separator) {
+        return columns.stream().map(f).collect(Collectors.joining(separator));
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.demo2.dal;
+
+import com.example.demo2.entities.Song;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from character trigrams of a song's lowercased title and artist to the ids of
+ * the songs containing them. A substring query of three or more characters intersects the posting
+ * lists of its trigrams, smallest first, and checks the few candidates left against the text;
+ * shorter queries fall back to a scan of the indexed text.
+ * Posting lists are kept sorted by id and updated incrementally. The index can be written to disk
+ * and read back at startup; the file carries a fingerprint of the indexed songs and is ignored
+ * when it does not match the library it is loaded for.
+ */
+final class TrigramIndex {
+    private static final int MAGIC = 0x54524931; // "TRI1"
+    private static final int FORMAT_VERSION = 1;
+    private static final char FIELD_SEPARATOR = '\0'; // never part of a query, so no trigram spans fields
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final ConcurrentIntObjectMap<String> texts = new ConcurrentIntObjectMap<>();
+    private long fingerprint; // order-independent sum over (id, text), so it can be kept incrementally
+    private boolean dirty;
+
+    /** Indexes the song, replacing what was indexed for its id before. */
+    void put(Song song) {
+        int id = song.getId();
+        String text = normalize(song.getTitle()) + FIELD_SEPARATOR + normalize(song.getArtist());
+        lock.writeLock().lock();
+        try {
+            String old = texts.put(id, text);
+            if (text.equals(old)) return;
+            Set<Long> added = trigrams(text);
+            if (old != null) {
+                fingerprint -= docHash(id, old);
+                for (long t : trigrams(old)) {
+                    if (!added.remove(t)) removePosting(t, id);
+                }
+            }
+            for (long t : added) postings.computeIfAbsent(t, k -> new Postings()).add(id);
+            fingerprint += docHash(id, text);
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            String old = texts.remove(id);
+            if (old == null) return;
+            for (long t : trigrams(old)) removePosting(t, id);
+            fingerprint -= docHash(id, old);
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            texts.clear();
+            fingerprint = 0;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Ids, ascending, of songs whose title or artist contains the query, ignoring case. */
+    int[] search(String query) {
+        String q = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (q.length() < 3) return scan(q);
+            Set<Long> grams = trigrams(q);
+            Postings[] lists = new Postings[grams.size()];
+            int n = 0;
+            for (long t : grams) {
+                Postings p = postings.get(t);
+                if (p == null) return new int[0];
+                lists[n++] = p;
+            }
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+            int[] candidates = Arrays.copyOf(lists[0].ids, lists[0].size);
+            int count = candidates.length;
+            for (int i = 1; i < lists.length && count > 0; i++) {
+                count = lists[i].retain(candidates, count);
+            }
+            // trigrams can all occur without occurring in sequence
+            int matches = 0;
+            for (int i = 0; i < count; i++) {
+                if (texts.get(candidates[i]).contains(q)) candidates[matches++] = candidates[i];
+            }
+            return Arrays.copyOf(candidates, matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Whether {@link #search} would find the song for the query, without consulting the index. */
+    static boolean matches(Song song, String query) {
+        String q = normalize(query);
+        return normalize(song.getTitle()).contains(q) || normalize(song.getArtist()).contains(q);
+    }
+
+    private int[] scan(String q) {
+        int[] ids = new int[texts.size()];
+        int[] n = {0};
+        texts.forEachKey(id -> {
+            String text = texts.get(id);
+            if (text != null && text.contains(q) && n[0] < ids.length) ids[n[0]++] = id;
+        });
+        int[] result = Arrays.copyOf(ids, n[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Indexes the given songs, reading the posting lists from {@code file} when it was saved for
+     * exactly these songs and building them otherwise.
+     */
+    void loadOrBuild(Path file, Collection<Song> songs) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            texts.clear();
+            fingerprint = 0;
+            for (Song s : songs) {
+                String text = normalize(s.getTitle()) + FIELD_SEPARATOR + normalize(s.getArtist());
+                texts.put(s.getId(), text);
+                fingerprint += docHash(s.getId(), text);
+            }
+            if (Files.exists(file) && readPostings(file)) {
+                dirty = false;
+                return;
+            }
+            postings.clear();
+            int[] ids = new int[texts.size()];
+            int[] n = {0};
+            texts.forEachKey(id -> ids[n[0]++] = id);
+            Arrays.sort(ids); // ascending ids turn every posting insert into an append
+            for (int id : ids) {
+                for (long t : trigrams(texts.get(id))) postings.computeIfAbsent(t, k -> new Postings()).add(id);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean readPostings(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return false;
+            if (in.readLong() != fingerprint || in.readInt() != texts.size()) return false;
+            int trigramCount = in.readInt();
+            for (int i = 0; i < trigramCount; i++) {
+                long trigram = in.readLong();
+                int size = in.readInt();
+                Postings p = new Postings(size);
+                for (int j = 0; j < size; j++) p.ids[j] = in.readInt();
+                p.size = size;
+                postings.put(trigram, p);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable search index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Writes the index if it changed since it was loaded or last saved. */
+    synchronized void save(Path file) {
+        lock.readLock().lock();
+        try {
+            if (!dirty) return;
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(texts.size());
+                out.writeInt(postings.size());
+                for (Map.Entry<Long, Postings> e : postings.entrySet()) {
+                    Postings p = e.getValue();
+                    out.writeLong(e.getKey());
+                    out.writeInt(p.size);
+                    for (int j = 0; j < p.size; j++) out.writeInt(p.ids[j]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Error saving search index: " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removePosting(long trigram, int id) {
+        Postings p = postings.get(trigram);
+        if (p != null && p.remove(id) && p.size == 0) postings.remove(trigram);
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> result = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            char a = text.charAt(i), b = text.charAt(i + 1), c = text.charAt(i + 2);
+            if (a == FIELD_SEPARATOR || b == FIELD_SEPARATOR || c == FIELD_SEPARATOR) continue;
+            result.add(((long) a << 32) | ((long) b << 16) | c);
+        }
+        return result;
+    }
+
+    private static long docHash(int id, String text) {
+        long h = (id * 0x9E3779B97F4A7C15L) ^ text.hashCode();
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /** Sorted, growable array of song ids. */
+    private static final class Postings {
+        int[] ids;
+        int size;
+
+        Postings() {
+            this(4);
+        }
+
+        Postings(int capacity) {
+            ids = new int[Math.max(capacity, 1)];
+        }
+
+        void add(int id) {
+            // ids usually arrive in ascending order, so this is an append
+            if (size > 0 && ids[size - 1] >= id) {
+                int at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0) return;
+                insert(-at - 1, id);
+                return;
+            }
+            insert(size, id);
+        }
+
+        private void insert(int at, int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return false;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        /** Keeps the first {@code count} sorted candidates that are also in this list; returns how many remain. */
+        int retain(int[] candidates, int count) {
+            int kept = 0, from = 0;
+            for (int i = 0; i < count && from < size; i++) {
+                int at = Arrays.binarySearch(ids, from, size, candidates[i]);
+                if (at >= 0) {
+                    candidates[kept++] = candidates[i];
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.demo2.dal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single background writer for the local SQLite store.
+ * Mutations are queued by callers and applied by one thread in group transactions:
+ * a transaction is committed once it holds {@code maxBatch} mutations or {@code maxDelayMillis}
+ * have passed since its first mutation. Within a group, mutations superseded by later ones
+ * (same key, or wiped by a later scope clear) are dropped before hitting the database.
+ */
+final class WriteBehindWriter implements AutoCloseable {
+
+    /** Binds parameters for one mutation. */
+    @FunctionalInterface
+    interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    /**
+     * One queued write.
+     *
+     * @param key    identity of the row written; a later mutation with the same key supersedes this one (may be null)
+     * @param scope  group the row belongs to, e.g. all rows of one playlist (may be null)
+     * @param clears scope wiped by this mutation; earlier mutations in that scope are superseded (may be null)
+     */
+    record Mutation(String key, String scope, String clears, String sql, Binder binder) {
+        Mutation {
+            Objects.requireNonNull(sql);
+            Objects.requireNonNull(binder);
+        }
+    }
+
+    private record Barrier(CompletableFuture<Void> done) {}
+
+    private static final Object STOP = new Object();
+
+    private final Connection connection;
+    private final int maxBatch;
+    private final long maxDelayMillis;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    WriteBehindWriter(Connection connection, int maxBatch, long maxDelayMillis) {
+        this.connection = connection;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        this.thread = new Thread(this::run, "local-store-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void submit(Mutation m) {
+        if (closed) throw new IllegalStateException("Writer is closed");
+        if (!thread.isAlive()) throw new IllegalStateException("Local store writer has stopped");
+        queue.add(m);
+    }
+
+    /** Block until everything submitted so far is committed; fails if the writer thread has died. */
+    void flush() {
+        if (closed || Thread.currentThread() == thread) return;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Barrier(done));
+        while (true) {
+            try {
+                done.get(1, TimeUnit.SECONDS);
+                return;
+            } catch (TimeoutException e) {
+                if (!thread.isAlive()) throw new IllegalStateException("Local store writer has stopped");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                return; // barriers are never completed exceptionally
+            }
+        }
+    }
+
+    /** Commit pending mutations and stop the writer thread. */
+    @Override
+    public void close() {
+        if (closed) return;
+        flush();
+        closed = true;
+        queue.add(STOP);
+        try {
+            thread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Mutation> batch = new ArrayList<>();
+        try {
+            while (true) {
+                Object item = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (true) {
+                    if (item == STOP) {
+                        commit(batch);
+                        return;
+                    }
+                    if (item instanceof Barrier b) {
+                        commit(batch);
+                        b.done().complete(null);
+                        break;
+                    }
+                    batch.add((Mutation) item);
+                    if (batch.size() >= maxBatch) {
+                        commit(batch);
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    item = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (item == null) {
+                        commit(batch);
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            commit(batch);
+        }
+    }
+
+    private void commit(List<Mutation> batch) {
+        if (batch.isEmpty()) return;
+        List<Mutation> effective = coalesce(batch);
+        batch.clear();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                apply(effective);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // a failing binder must not kill the only writer thread
+            System.err.println("Group commit failed, retrying writes one by one: " + e.getMessage());
+            for (Mutation m : effective) {
+                try {
+                    apply(List.of(m));
+                } catch (SQLException | RuntimeException ex) {
+                    System.err.println("Error writing to local store: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Runs mutations in order, batching consecutive ones that share a statement. */
+    private void apply(List<Mutation> mutations) throws SQLException {
+        int i = 0;
+        while (i < mutations.size()) {
+            String sql = mutations.get(i).sql();
+            int end = i + 1;
+            while (end < mutations.size() && mutations.get(end).sql().equals(sql)) end++;
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                if (end - i == 1) {
+                    mutations.get(i).binder().bind(ps);
+                    ps.executeUpdate();
+                } else {
+                    for (int j = i; j < end; j++) {
+                        mutations.get(j).binder().bind(ps);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            i = end;
+        }
+    }
+
+    static List<Mutation> coalesce(List<Mutation> batch) {
+        Set<String> laterKeys = new HashSet<>();
+        Set<String> laterClears = new HashSet<>();
+        List<Mutation> kept = new ArrayList<>(batch.size());
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Mutation m = batch.get(i);
+            boolean superseded = (m.key() != null && !laterKeys.add(m.key()))
+                    || (m.scope() != null && laterClears.contains(m.scope()));
+            if (superseded) continue;
+            if (m.clears() != null) laterClears.add(m.clears());
+            kept.add(m);
+        }
+        Collections.reverse(kept);
+        return kept;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.demo2.entities;
+
+import java.util.List;
+
+/**
+ * Songs whose files hold the same audio, ordered by id. The first one is kept when the group is
+ * merged; the others are removed and their playlist entries point to it instead.
+ */
+public record DuplicateGroup(String fingerprint, List<Song> songs) {
+
+    public Song survivor() {
+        return songs.get(0);
+    }
+
+    public List<Song> duplicates() {
+        return songs.subList(1, songs.size());
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.demo2.entities;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Songs, playlists and playlist contents read at one point in time.
+ * Playlist contents only reference songs in {@link #songs()}.
+ */
+public record LibrarySnapshot(List<Song> songs, List<Playlist> playlists, Map<Integer, List<Song>> playlistSongs) {
+
+    /** Songs of the playlist in order; empty for an unknown or empty playlist. */
+    public List<Song> songsOf(int playlistId) {
+        return playlistSongs.getOrDefault(playlistId, List.of());
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.demo2.entities;
+
+/**
+ * A song at its place in a playlist. The order key sorts entries within the playlist
+ * and is the cursor for fetching the entries after this one.
+ */
+public record PlaylistEntry(int orderKey, Song song) {
+}
@@ -1,31 +1,46 @@
 package com.example.demo2.gui;
 
+import com.example.demo2.bll.DurationProbeScheduler;
+import com.example.demo2.bll.LibraryImporter;
+import com.example.demo2.bll.LibraryService;
 import com.example.demo2.bll.PlaylistService;
 import com.example.demo2.bll.SongService;
+import com.example.demo2.dal.CircuitBreaker;
+import com.example.demo2.dal.DBManager;
+import com.example.demo2.dal.MetadataCache;
+import com.example.demo2.entities.LibrarySnapshot;
 import com.example.demo2.entities.Playlist;
 import com.example.demo2.entities.Song;
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import com.example.demo2.media.MediaMetadata;
+import com.example.demo2.media.PlaybackEngine;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 import java.io.File;
-import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.function.IntConsumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Main controller for the MyTunes UI.
@@ -47,24 +62,44 @@ public class MyTunesController {
 
     // Right: all songs table and filter
     @FXML private TextField filterField;
-    @FXML private Button filterButton;
+    @FXML private ChoiceBox<Integer> crossfadeChoice;
     @FXML private TableView<Song> songTable;
     @FXML private TableColumn<Song, String> titleCol;
     @FXML private TableColumn<Song, String> artistCol;
     @FXML private TableColumn<Song, String> durationCol;
 
+    // Service results are handed back to the FX thread through this executor
+    private static final Executor FX = Platform::runLater;
+
     private final SongService songService = new SongService();
     private final PlaylistService playlistService = new PlaylistService();
+    private final LibraryService libraryService = new LibraryService();
+    private LibraryImporter importer; // running folder import, FX thread only
+    private final DurationProbeScheduler durationProbes =
+            new DurationProbeScheduler(songService, found -> Platform.runLater(() -> applyDurations(found)));
+    private boolean applyingSnapshot; // selection changes during reloadAll are served from the snapshot
+    // Live search: debounced on typing; a keystroke cancels the search in progress, and results of
+    // older keystrokes that still arrive are dropped by generation
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(200));
+    private int searchGeneration;
+    private CompletableFuture<List<Song>> pendingSearch;
+    private String shownQuery = ""; // query whose results the song table shows, "" for the whole library
 
     private final ObservableList<Song> songs = FXCollections.observableArrayList();
     private final ObservableList<Playlist> playlists = FXCollections.observableArrayList();
     private final ObservableList<Song> songsInSelectedPlaylist = FXCollections.observableArrayList();
 
     // Playback state
-    private MediaPlayer mediaPlayer;
-    private ObservableList<Song> currentQueue = FXCollections.observableArrayList();
-    private int currentIndex = -1;
-    private Timeline progressTimeline;
+    private final PlaybackEngine playback = new PlaybackEngine(new PlaybackEngine.Listener() {
+        @Override public void onTrackStarted(Song song, MediaPlayer player) { onTrackStarted(song, player); }
+        @Override public void onQueueFinished() { onQueueFinished(); }
+        @Override public void onError(Song song, String message) { statusLabel.setText("Could not play " + song.getTitle() + ": " + message); }
+    });
+    // Progress display follows the current player's time, which the player updates once per pulse
+    private final InvalidationListener progressListener = obs -> updateProgress();
+    private MediaPlayer trackedPlayer;
+    private int shownSecond = -1;
+    private long shownSliderPixel = -1;
     private boolean isSeekingFromUser = false;
 
     @FXML
@@ -86,23 +121,43 @@ public class MyTunesController {
         progressSlider.setOnMousePressed(e -> isSeekingFromUser = true);
         progressSlider.setOnMouseReleased(e -> {
             isSeekingFromUser = false;
-            if (mediaPlayer != null && mediaPlayer.getStatus() == MediaPlayer.Status.PLAYING || mediaPlayer.getStatus() == MediaPlayer.Status.PAUSED) {
+            shownSliderPixel = -1; // the user moved the thumb
+            MediaPlayer mediaPlayer = playback.player();
+            if (mediaPlayer != null && (mediaPlayer.getStatus() == MediaPlayer.Status.PLAYING || mediaPlayer.getStatus() == MediaPlayer.Status.PAUSED)) {
                 mediaPlayer.seek(Duration.millis(progressSlider.getValue() * mediaPlayer.getTotalDuration().toMillis() / 100.0));
             }
         });
 
+        // Search as you type
+        filterField.textProperty().addListener((obs, old, text) -> onFilterChanged());
+        searchDebounce.setOnFinished(e -> runSearch(filterField.getText().trim()));
+
+        // Crossfade between tracks, in seconds
+        crossfadeChoice.getItems().setAll(0, 2, 5, 10);
+        crossfadeChoice.setConverter(new StringConverter<>() {
+            @Override public String toString(Integer seconds) { return seconds == null || seconds == 0 ? "No crossfade" : "Crossfade " + seconds + " s"; }
+            @Override public Integer fromString(String text) { return null; }
+        });
+        crossfadeChoice.getSelectionModel().selectedItemProperty()
+                .addListener((obs, old, seconds) -> playback.setCrossfadeSeconds(seconds == null ? 0 : seconds));
+        crossfadeChoice.getSelectionModel().select(0);
+
         // Selection changes
         playlistList.getSelectionModel().selectedItemProperty().addListener((obs, old, sel) -> {
-            try {
-                refreshPlaylistSongs();
-            } catch (Exception e) {
-                showError("Failed to load playlist songs", e);
-            }
+            if (applyingSnapshot) return;
+            refreshPlaylistSongs();
         });
 
         // Double-click song in table to play
         songTable.setRowFactory(tv -> {
-            TableRow<Song> row = new TableRow<>();
+            TableRow<Song> row = new TableRow<>() {
+                @Override
+                protected void updateItem(Song item, boolean empty) {
+                    super.updateItem(item, empty);
+                    // rows being shown get their duration read first
+                    if (!empty && item != null && item.getDurationSeconds() == 0) durationProbes.prioritize(item);
+                }
+            };
             row.setOnMouseClicked(event -> {
                 if (event.getClickCount() == 2 && !row.isEmpty()) {
                     playFromTable(row.getItem());
@@ -119,29 +174,68 @@ public class MyTunesController {
             }
         });
 
+        // Follow the database going offline / coming back
+        DBManager.addStateListener((from, to) -> Platform.runLater(() -> onDatabaseStateChanged(to)));
+
         // Initial load
         reloadAll();
     }
 
+    private void onDatabaseStateChanged(CircuitBreaker.State state) {
+        switch (state) {
+            case OPEN -> statusLabel.setText("Database offline, using local library");
+            case CLOSED -> {
+                statusLabel.setText("Database connection restored");
+                reloadAll();
+            }
+            default -> {}
+        }
+    }
+
     private void reloadAll() {
+        onFx(libraryService.loadSnapshotAsync(), this::applySnapshot, "Failed to load data");
+    }
+
+    private void applySnapshot(LibrarySnapshot snapshot) {
+        Playlist sel = playlistList.getSelectionModel().getSelectedItem();
+        showSongs(snapshot.songs());
+        applyingSnapshot = true;
         try {
-            songs.setAll(songService.getAll());
-            playlists.setAll(playlistService.getAll());
-            refreshPlaylistSongs();
-            // Try to auto-fill durations for any songs that have unknown duration (0)
-            autofillUnknownDurations();
-        } catch (Exception e) {
-            showError("Failed to load data", e);
+            playlists.setAll(snapshot.playlists());
+            if (sel != null && playlists.contains(sel)) playlistList.getSelectionModel().select(sel);
+        } finally {
+            applyingSnapshot = false;
         }
+        Playlist current = playlistList.getSelectionModel().getSelectedItem();
+        if (current == null) songsInSelectedPlaylist.clear();
+        else songsInSelectedPlaylist.setAll(snapshot.songsOf(current.getId()));
+        // Try to auto-fill durations for any songs that have unknown duration (0)
+        autofillUnknownDurations(snapshot.songs());
     }
 
-    private void refreshPlaylistSongs() throws SQLException {
+    /** Reloads the songs of the selected playlist; completes on the FX thread once they are shown. */
+    private CompletableFuture<List<Song>> refreshPlaylistSongs() {
         Playlist sel = playlistList.getSelectionModel().getSelectedItem();
         if (sel == null) {
             songsInSelectedPlaylist.clear();
-        } else {
-            songsInSelectedPlaylist.setAll(playlistService.getSongs(sel.getId()));
+            return CompletableFuture.completedFuture(List.of());
         }
+        return onFx(playlistService.getSongsAsync(sel.getId()), loaded -> {
+            // the selection may have moved on while loading
+            if (sel.equals(playlistList.getSelectionModel().getSelectedItem())) songsInSelectedPlaylist.setAll(loaded);
+        }, "Failed to load playlist songs");
+    }
+
+    private void refreshSongs() {
+        onFx(songService.getAllAsync(), this::showSongs, "Failed to load songs");
+    }
+
+    /** Runs {@code onSuccess} with the result on the FX thread, or shows {@code errorMessage} there. */
+    private <T> CompletableFuture<T> onFx(CompletableFuture<T> future, Consumer<T> onSuccess, String errorMessage) {
+        return future.whenCompleteAsync((result, error) -> {
+            if (error == null) onSuccess.accept(result);
+            else showError(errorMessage, error instanceof CompletionException ? error.getCause() : error);
+        }, FX);
     }
 
     // Toolbar: playback
@@ -168,22 +262,26 @@ public class MyTunesController {
     }
 
     @FXML private void onPause() {
+        MediaPlayer mediaPlayer = playback.player();
         if (mediaPlayer == null) return;
         switch (mediaPlayer.getStatus()) {
-            case PLAYING -> { mediaPlayer.pause(); statusLabel.setText("Paused"); }
-            case PAUSED -> { mediaPlayer.play(); statusLabel.setText("Playing"); }
+            case PLAYING -> { playback.pause(); statusLabel.setText("Paused"); }
+            case PAUSED -> { playback.resume(); statusLabel.setText("Playing"); }
             default -> {}
         }
     }
 
+    @FXML private void onNext() { playback.next(); }
+
+    @FXML private void onPrevious() { playback.previous(); }
+
     @FXML private void onStop() {
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
+        if (playback.player() != null) {
+            playback.stop();
+            mediaView.setMediaPlayer(null);
             statusLabel.setText("Stopped");
         }
-        if (progressTimeline != null) {
-            progressTimeline.stop();
-        }
+        stopProgressTracking();
         progressSlider.setValue(0);
         currentTimeLabel.setText("00:00");
         totalTimeLabel.setText("00:00");
@@ -194,62 +292,60 @@ public class MyTunesController {
 
     private void playQueue(ObservableList<Song> queue, int startIndex) {
         if (startIndex < 0 || startIndex >= queue.size()) return;
-        currentQueue = FXCollections.observableArrayList(queue);
-        currentIndex = startIndex;
-        playCurrent();
+        statusLabel.setText("Loading: " + queue.get(startIndex).getTitle());
+        playback.play(queue, startIndex);
     }
 
-    private void playCurrent() {
-        if (currentIndex < 0 || currentIndex >= currentQueue.size()) {
-            statusLabel.setText("Finished queue");
-            return;
-        }
-        Song s = currentQueue.get(currentIndex);
-        try {
-            if (mediaPlayer != null) mediaPlayer.stop();
-            if (progressTimeline != null) progressTimeline.stop();
-            
-            Media media = new Media(new File(s.getFilePath()).toURI().toString());
-            mediaPlayer = new MediaPlayer(media);
-            mediaView.setMediaPlayer(mediaPlayer);
-            
-            statusLabel.setText("Loading: " + s.getTitle());
-            mediaPlayer.setOnReady(() -> {
-                statusLabel.setText("Playing: " + s.getTitle());
-                totalTimeLabel.setText(formatDuration((int) media.getDuration().toSeconds()));
-                mediaPlayer.play();
-                startProgressTracking();
-            });
-            mediaPlayer.setOnEndOfMedia(() -> {
-                if (progressTimeline != null) progressTimeline.stop();
-                currentIndex++;
-                playCurrent();
-            });
-            mediaPlayer.setOnError(() -> statusLabel.setText("Error: " + mediaPlayer.getError()));
-        } catch (Exception ex) {
-            statusLabel.setText("Could not play: " + s.getTitle());
-        }
+    private void onTrackStarted(Song s, MediaPlayer player) {
+        mediaView.setMediaPlayer(player);
+        statusLabel.setText("Playing: " + s.getTitle());
+        totalTimeLabel.setText(formatDuration((int) player.getMedia().getDuration().toSeconds()));
+        startProgressTracking(player);
     }
 
-    private void startProgressTracking() {
-        if (progressTimeline != null) progressTimeline.stop();
-        progressTimeline = new Timeline(new KeyFrame(Duration.millis(100), e -> updateProgress()));
-        progressTimeline.setCycleCount(Animation.INDEFINITE);
-        progressTimeline.play();
+    private void onQueueFinished() {
+        stopProgressTracking();
+        mediaView.setMediaPlayer(null);
+        statusLabel.setText("Finished queue");
     }
 
+    private void startProgressTracking(MediaPlayer player) {
+        stopProgressTracking();
+        trackedPlayer = player;
+        player.currentTimeProperty().addListener(progressListener);
+        updateProgress();
+    }
+
+    private void stopProgressTracking() {
+        if (trackedPlayer != null) trackedPlayer.currentTimeProperty().removeListener(progressListener);
+        trackedPlayer = null;
+        shownSecond = -1;
+        shownSliderPixel = -1;
+    }
+
+    /** Touches the label only when the shown second changes and the slider when its thumb would move a pixel. */
     private void updateProgress() {
-        if (mediaPlayer == null || mediaPlayer.getTotalDuration() == null || mediaPlayer.getTotalDuration().toMillis() <= 0) {
-            return;
-        }
+        MediaPlayer mediaPlayer = trackedPlayer;
+        if (mediaPlayer == null) return;
+        // reading the time also re-arms the invalidation listener
         double currentMs = mediaPlayer.getCurrentTime().toMillis();
-        double totalMs = mediaPlayer.getTotalDuration().toMillis();
-        double progress = (currentMs / totalMs) * 100.0;
-        
+        Duration total = mediaPlayer.getTotalDuration();
+        if (total == null || total.toMillis() <= 0 || total.isUnknown() || total.isIndefinite()) return;
+        double totalMs = total.toMillis();
+
+        int second = (int) (currentMs / 1000);
+        if (second != shownSecond) {
+            shownSecond = second;
+            currentTimeLabel.setText(formatDuration(second));
+        }
         if (!isSeekingFromUser) {
-            progressSlider.setValue(progress);
+            double progress = (currentMs / totalMs) * 100.0;
+            long pixel = Math.round(progress / 100.0 * progressSlider.getWidth());
+            if (pixel != shownSliderPixel) {
+                shownSliderPixel = pixel;
+                progressSlider.setValue(progress);
+            }
         }
-        currentTimeLabel.setText(formatDuration((int) (currentMs / 1000)));
     }
 
     // Playlists
@@ -259,12 +355,9 @@ public class MyTunesController {
         dlg.setHeaderText("Create new playlist");
         dlg.setContentText("Name:");
         Optional<String> res = dlg.showAndWait();
-        res.map(String::trim).filter(n -> !n.isBlank()).ifPresent(name -> {
-            try {
-                playlistService.create(new Playlist(name));
-                playlists.setAll(playlistService.getAll());
-            } catch (Exception e) { showError("Failed to create playlist", e); }
-        });
+        res.map(String::trim).filter(n -> !n.isBlank()).ifPresent(name ->
+                onFx(playlistService.createAsync(new Playlist(name)).thenCompose(p -> playlistService.getAllAsync()),
+                        playlists::setAll, "Failed to create playlist"));
     }
 
     @FXML private void onEditPlaylist() {
@@ -275,12 +368,12 @@ public class MyTunesController {
         dlg.setHeaderText("Rename playlist");
         dlg.setContentText("Name:");
         dlg.showAndWait().map(String::trim).filter(n -> !n.isBlank()).ifPresent(name -> {
-            try {
-                sel.setName(name);
-                playlistService.rename(sel);
-                playlists.setAll(playlistService.getAll());
-                playlistList.getSelectionModel().select(sel);
-            } catch (Exception e) { showError("Failed to rename playlist", e); }
+            // a new object: the selected one may be shared with the offline store's readers
+            Playlist renamed = new Playlist(sel.getId(), name);
+            onFx(playlistService.renameAsync(renamed).thenCompose(v -> playlistService.getAllAsync()), all -> {
+                playlists.setAll(all);
+                playlistList.getSelectionModel().select(renamed);
+            }, "Failed to rename playlist");
         });
     }
 
@@ -292,11 +385,10 @@ public class MyTunesController {
         confirm.setHeaderText("Delete playlist '" + sel.getName() + "'?");
         confirm.setContentText("This will not delete the songs.");
         if (confirm.showAndWait().filter(b -> b == ButtonType.OK).isPresent()) {
-            try {
-                playlistService.delete(sel.getId());
-                playlists.setAll(playlistService.getAll());
+            onFx(playlistService.deleteAsync(sel.getId()).thenCompose(deleted -> playlistService.getAllAsync()), all -> {
+                playlists.setAll(all);
                 songsInSelectedPlaylist.clear();
-            } catch (Exception e) { showError("Failed to delete playlist", e); }
+            }, "Failed to delete playlist");
         }
     }
 
@@ -304,55 +396,96 @@ public class MyTunesController {
         Playlist sel = playlistList.getSelectionModel().getSelectedItem();
         int idx = playlistSongsList.getSelectionModel().getSelectedIndex();
         if (sel == null || idx <= 0) return;
-        try {
-            playlistService.move(sel.getId(), idx, idx - 1);
-            refreshPlaylistSongs();
-            playlistSongsList.getSelectionModel().select(idx - 1);
-        } catch (Exception e) { showError("Failed to move", e); }
+        onFx(playlistService.moveAsync(sel.getId(), idx, idx - 1), v -> refreshPlaylistSongs()
+                .thenRunAsync(() -> playlistSongsList.getSelectionModel().select(idx - 1), FX), "Failed to move");
     }
 
     @FXML private void onMoveDown() {
         Playlist sel = playlistList.getSelectionModel().getSelectedItem();
         int idx = playlistSongsList.getSelectionModel().getSelectedIndex();
         if (sel == null || idx < 0 || idx >= songsInSelectedPlaylist.size() - 1) return;
-        try {
-            playlistService.move(sel.getId(), idx, idx + 1);
-            refreshPlaylistSongs();
-            playlistSongsList.getSelectionModel().select(idx + 1);
-        } catch (Exception e) { showError("Failed to move", e); }
+        onFx(playlistService.moveAsync(sel.getId(), idx, idx + 1), v -> refreshPlaylistSongs()
+                .thenRunAsync(() -> playlistSongsList.getSelectionModel().select(idx + 1), FX), "Failed to move");
     }
 
     @FXML private void onRemoveFromPlaylist() {
         Playlist sel = playlistList.getSelectionModel().getSelectedItem();
         int idx = playlistSongsList.getSelectionModel().getSelectedIndex();
         if (sel == null || idx < 0) return;
-        try {
-            playlistService.removeAtPosition(sel.getId(), idx);
-            refreshPlaylistSongs();
-        } catch (Exception e) { showError("Failed to remove from playlist", e); }
+        onFx(playlistService.removeAtPositionAsync(sel.getId(), idx), v -> refreshPlaylistSongs(),
+                "Failed to remove from playlist");
     }
 
     // Songs
     @FXML private void onNewSong() { showSongDialog(null); }
+    @FXML private void onImportFolder() {
+        if (importer != null) {
+            Alert running = new Alert(Alert.AlertType.CONFIRMATION, "Stop the import that is running?");
+            running.setHeaderText("Import in progress");
+            if (running.showAndWait().filter(b -> b == ButtonType.OK).isPresent()) importer.cancel();
+            return;
+        }
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Import Folder");
+        File dir = chooser.showDialog(songTable.getScene().getWindow());
+        if (dir == null) return;
+        LibraryImporter running = new LibraryImporter(songService);
+        importer = running;
+        statusLabel.setText("Scanning " + dir.getName() + "…");
+        Thread.ofVirtual().name("library-import").start(() -> {
+            try {
+                LibraryImporter.Progress result = running.importFolder(dir.toPath(), p -> Platform.runLater(() ->
+                        statusLabel.setText(String.format("Imported %d of %d files (%.0f songs/s)",
+                                p.imported(), p.filesFound() - p.skipped(), p.songsPerSecond()))));
+                Platform.runLater(() -> {
+                    importer = null;
+                    statusLabel.setText(String.format("Imported %d songs, %d already in library, %d failed",
+                            result.imported(), result.skipped(), result.failed()));
+                    reloadAll();
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    importer = null;
+                    showError("Import failed", e);
+                    reloadAll();
+                });
+            }
+        });
+    }
+
     @FXML private void onEditSong() { showSongDialog(songTable.getSelectionModel().getSelectedItem()); }
 
     @FXML private void onDeleteSong() {
         Song sel = songTable.getSelectionModel().getSelectedItem();
         if (sel == null) return;
+        playlistService.getPlaylistsContainingAsync(sel.getId())
+                .exceptionally(e -> List.of())
+                .thenAcceptAsync(containing -> confirmDeleteSong(sel, containing), FX);
+    }
+
+    private void confirmDeleteSong(Song sel, List<Playlist> containing) {
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Delete Song");
         confirm.setHeaderText("Delete song '" + sel.getTitle() + "'?");
         CheckBox deleteFile = new CheckBox("Also delete the file from disk");
-        confirm.getDialogPane().setContent(deleteFile);
+        VBox content = new VBox(8);
+        if (!containing.isEmpty()) {
+            content.getChildren().add(new Label("It will also be removed from: " +
+                    containing.stream().map(Playlist::getName).collect(Collectors.joining(", "))));
+        }
+        content.getChildren().add(deleteFile);
+        confirm.getDialogPane().setContent(content);
         if (confirm.showAndWait().filter(b -> b == ButtonType.OK).isPresent()) {
-            try {
-                songService.delete(sel.getId());
-                if (deleteFile.isSelected()) {
-                    try { new File(sel.getFilePath()).delete(); } catch (Exception ignored) {}
+            boolean alsoFile = deleteFile.isSelected();
+            onFx(songService.deleteAsync(sel.getId()), deleted -> {
+                if (alsoFile) {
+                    Thread.startVirtualThread(() -> {
+                        try { new File(sel.getFilePath()).delete(); } catch (Exception ignored) {}
+                    });
                 }
-                songs.setAll(songService.getAll());
+                refreshSongs();
                 refreshPlaylistSongs();
-            } catch (Exception e) { showError("Failed to delete song", e); }
+            }, "Failed to delete song");
         }
     }
 
@@ -360,24 +493,56 @@ public class MyTunesController {
         Playlist pl = playlistList.getSelectionModel().getSelectedItem();
         Song song = songTable.getSelectionModel().getSelectedItem();
         if (pl == null || song == null) return;
-        try {
-            playlistService.addSongToEnd(pl.getId(), song.getId());
-            refreshPlaylistSongs();
-        } catch (Exception e) { showError("Failed to add to playlist", e); }
+        onFx(playlistService.addSongToEndAsync(pl.getId(), song.getId()), v -> refreshPlaylistSongs(),
+                "Failed to add to playlist");
     }
 
-    @FXML private void onFilterToggle() {
-        try {
-            if ("Filter".equals(filterButton.getText())) {
-                List<Song> filtered = songService.search(filterField.getText().trim());
-                songs.setAll(filtered);
-                filterButton.setText("Clear");
-            } else {
-                songs.setAll(songService.getAll());
-                filterField.clear();
-                filterButton.setText("Filter");
+    @FXML private void onClearFilter() {
+        filterField.clear();
+    }
+
+    /** Every keystroke supersedes the search in progress and restarts the debounce. */
+    private void onFilterChanged() {
+        cancelSearch();
+        searchDebounce.playFromStart();
+    }
+
+    private void cancelSearch() {
+        searchGeneration++;
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        pendingSearch = null;
+    }
+
+    /**
+     * Shows the songs matching the query. When it extends the query shown, the shown songs are
+     * narrowed instead of searching again, keeping their order, so ranked offline results stay ranked.
+     */
+    private void runSearch(String query) {
+        int generation = searchGeneration;
+        CompletableFuture<List<Song>> search = songService.searchAsync(query, shownQuery, List.copyOf(songs));
+        pendingSearch = search;
+        search.whenCompleteAsync((found, error) -> {
+            if (generation != searchGeneration) return;
+            pendingSearch = null;
+            if (error != null) {
+                showError("Filter failed", error instanceof CompletionException ? error.getCause() : error);
+                return;
             }
-        } catch (Exception e) { showError("Filter failed", e); }
+            shownQuery = query;
+            songs.setAll(found);
+        }, FX);
+    }
+
+    /** Shows a freshly loaded library, through the active filter if there is one. */
+    private void showSongs(List<Song> all) {
+        String query = filterField.getText().trim();
+        cancelSearch();
+        shownQuery = ""; // the shown results predate the reload, so they are searched again, not narrowed
+        if (query.isEmpty()) {
+            songs.setAll(all);
+        } else {
+            runSearch(query);
+        }
     }
 
     private void showSongDialog(Song editing) {
@@ -406,9 +571,11 @@ public class MyTunesController {
         final int[] computedDuration = { editing != null ? editing.getDurationSeconds() : 0 };
         if (computedDuration[0] > 0) durationLbl.setText(formatDuration(computedDuration[0]));
 
-        // Helper to (re)probe duration when file path changes
-        final MediaPlayer[] probeRef = { null };
+        // Helper to (re)read duration and tags when the file path changes; headers are read off the
+        // FX thread and results from an older path are dropped
+        final int[] probeGeneration = { 0 };
         Runnable doProbe = () -> {
+            int generation = ++probeGeneration[0];
             String p = path.getText().trim();
             if (p.isEmpty()) {
                 durationLbl.setText("No file");
@@ -421,33 +588,17 @@ public class MyTunesController {
                 computedDuration[0] = 0;
                 return;
             }
-            // Cancel previous probe
-            if (probeRef[0] != null) {
-                try { probeRef[0].dispose(); } catch (Exception ignored) {}
-                probeRef[0] = null;
-            }
             durationLbl.setText("Reading…");
-            try {
-                Media media = new Media(f.toURI().toString());
-                MediaPlayer mp = new MediaPlayer(media);
-                probeRef[0] = mp;
-                mp.setOnReady(() -> {
-                    int secs = (int) Math.round(media.getDuration().toSeconds());
-                    computedDuration[0] = Math.max(0, secs);
+            Thread.startVirtualThread(() -> {
+                MediaMetadata meta = readMetadata(f);
+                Platform.runLater(() -> {
+                    if (generation != probeGeneration[0]) return;
+                    computedDuration[0] = meta.durationSeconds();
                     durationLbl.setText(computedDuration[0] > 0 ? formatDuration(computedDuration[0]) : "Unknown");
-                    try { mp.dispose(); } catch (Exception ignored) {}
-                    probeRef[0] = null;
-                });
-                mp.setOnError(() -> {
-                    computedDuration[0] = 0;
-                    durationLbl.setText("Unknown");
-                    try { mp.dispose(); } catch (Exception ignored) {}
-                    probeRef[0] = null;
+                    if (title.getText().isBlank() && meta.title() != null) title.setText(meta.title());
+                    if (artist.getText().isBlank() && meta.artist() != null) artist.setText(meta.artist());
                 });
-            } catch (Exception ex) {
-                computedDuration[0] = 0;
-                durationLbl.setText("Unknown");
-            }
+            });
         };
         // Trigger probe when the path changes (typing or choosing)
         path.textProperty().addListener((obs, ov, nv) -> doProbe.run());
@@ -480,14 +631,10 @@ public class MyTunesController {
                     // Use computed duration if available
                     return new Song(title.getText().trim(), artist.getText().trim(), computedDuration[0], path.getText().trim());
                 } else {
-                    editing.setTitle(title.getText().trim());
-                    editing.setArtist(artist.getText().trim());
-                    editing.setFilePath(path.getText().trim());
+                    // edited as a new object; the shown one may be shared with the offline store's readers
                     // If a new duration was successfully computed (and > 0), update it
-                    if (computedDuration[0] > 0) {
-                        editing.setDurationSeconds(computedDuration[0]);
-                    }
-                    return editing;
+                    int duration = computedDuration[0] > 0 ? computedDuration[0] : editing.getDurationSeconds();
+                    return new Song(editing.getId(), title.getText().trim(), artist.getText().trim(), duration, path.getText().trim());
                 }
             }
             return null;
@@ -495,13 +642,13 @@ public class MyTunesController {
 
         Optional<Song> res = dialog.showAndWait();
         if (res.isPresent()) {
-            try {
-                Song s = res.get();
-                if (s.getId() == null) songService.create(s); else songService.update(s);
-                songs.setAll(songService.getAll());
+            Song s = res.get();
+            CompletableFuture<?> save = s.getId() == null ? songService.createAsync(s) : songService.updateAsync(s);
+            onFx(save.thenCompose(saved -> songService.getAllAsync()), all -> {
+                showSongs(all);
                 songTable.refresh();
                 refreshPlaylistSongs();
-            } catch (Exception e) { showError("Failed to save song", e); }
+            }, "Failed to save song");
         }
     }
 
@@ -529,46 +676,34 @@ public class MyTunesController {
         return String.format("%d:%02d", m, s);
     }
 
-    private void probeDuration(String filePath, IntConsumer onDone) {
-        File f = new File(filePath);
-        if (!f.exists()) { onDone.accept(0); return; }
+    private static MediaMetadata readMetadata(File file) {
         try {
-            Media media = new Media(f.toURI().toString());
-            MediaPlayer mp = new MediaPlayer(media);
-            mp.setOnReady(() -> {
-                int secs = (int) Math.round(media.getDuration().toSeconds());
-                try { mp.dispose(); } catch (Exception ignored) {}
-                onDone.accept(Math.max(0, secs));
-            });
-            mp.setOnError(() -> {
-                try { mp.dispose(); } catch (Exception ignored) {}
-                onDone.accept(0);
-            });
+            return MetadataCache.read(file.toPath());
         } catch (Exception ex) {
-            onDone.accept(0);
+            return MediaMetadata.UNKNOWN;
         }
     }
 
-    private void autofillUnknownDurations() {
-        // Iterate over a copy to avoid concurrent modification
-        for (Song s : List.copyOf(songs)) {
-            if (s.getDurationSeconds() == 0) {
-                File f = new File(s.getFilePath());
-                if (f.exists()) {
-                    probeDuration(s.getFilePath(), secs -> {
-                        if (secs > 0) {
-                            // Persist and update UI
-                            Platform.runLater(() -> {
-                                try {
-                                    s.setDurationSeconds(secs);
-                                    songService.update(s);
-                                    songTable.refresh();
-                                } catch (Exception ignored) { }
-                            });
-                        }
-                    });
-                }
-            }
+    /** Reads missing durations for the whole library, not just the songs the filter shows. */
+    private void autofillUnknownDurations(List<Song> library) {
+        // songs from an earlier load are replaced, stop reading for them
+        durationProbes.cancel();
+        durationProbes.submit(library);
+    }
+
+    private void applyDurations(List<Song> found) {
+        Map<Integer, Integer> seconds = new HashMap<>();
+        for (Song s : found) seconds.put(s.getId(), s.getDurationSeconds());
+        withDurations(songs, seconds);
+        withDurations(songsInSelectedPlaylist, seconds);
+    }
+
+    /** Replaces the listed songs that have a new duration; shown songs are never changed in place. */
+    private static void withDurations(ObservableList<Song> list, Map<Integer, Integer> seconds) {
+        for (int i = 0; i < list.size(); i++) {
+            Song s = list.get(i);
+            Integer secs = seconds.get(s.getId());
+            if (secs != null) list.set(i, new Song(s.getId(), s.getTitle(), s.getArtist(), secs, s.getFilePath()));
         }
     }
 }
@@ -0,0 +1,117 @@
+package com.example.demo2.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 of a file's audio payload, so copies of a recording hash alike even when their tags
+ * differ. Tag blocks are left out: ID3v2 at the start and ID3v1/APEv2 at the end of MP3s; for WAV
+ * only the data chunk and for MP4/M4A only the mdat box are hashed. The payload is read through
+ * memory-mapped windows of the file.
+ */
+public final class AudioFingerprinter {
+    private static final long WINDOW = 64L << 20;
+
+    private AudioFingerprinter() {}
+
+    /** Lowercase hex digest of the audio payload. */
+    public static String fingerprint(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] range = payload(ch);
+            MessageDigest digest = sha256();
+            for (long pos = range[0]; pos < range[1]; pos += WINDOW) {
+                digest.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, range[1] - pos)));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    /** [start, end) of the audio bytes; the whole file when the format is not recognised. */
+    private static long[] payload(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < 12) return new long[]{0, size};
+        ByteBuffer head = read(ch, 0, 12);
+        if (ascii(head, 0, 4).equals("RIFF") && ascii(head, 8, 4).equals("WAVE")) {
+            long[] data = findChunk(ch, 12, size, "data", ByteOrder.LITTLE_ENDIAN);
+            if (data != null) return data;
+        } else if (ascii(head, 4, 4).equals("ftyp")) {
+            long[] mdat = findChunk(ch, 0, size, "mdat", ByteOrder.BIG_ENDIAN);
+            if (mdat != null) return mdat;
+        }
+        return mp3Payload(ch, size);
+    }
+
+    private static long[] mp3Payload(FileChannel ch, long size) throws IOException {
+        long start = 0;
+        long end = size;
+        ByteBuffer id3 = read(ch, 0, 10);
+        if (ascii(id3, 0, 3).equals("ID3")) {
+            int tagSize = ((id3.get(6) & 0x7F) << 21) | ((id3.get(7) & 0x7F) << 14) | ((id3.get(8) & 0x7F) << 7) | (id3.get(9) & 0x7F);
+            start = Math.min(size, 10L + tagSize + ((id3.get(5) & 0x10) != 0 ? 10 : 0));
+        }
+        if (end - start >= 128 && ascii(read(ch, end - 128, 3), 0, 3).equals("TAG")) end -= 128;
+        if (end - start >= 32) {
+            ByteBuffer ape = read(ch, end - 32, 32).order(ByteOrder.LITTLE_ENDIAN);
+            if (ascii(ape, 0, 8).equals("APETAGEX")) {
+                // size covers items and footer; the optional header is flagged in bit 31
+                long apeSize = (ape.getInt(12) & 0xFFFFFFFFL) + ((ape.getInt(20) & 0x80000000) != 0 ? 32 : 0);
+                end = Math.max(start, end - apeSize);
+            }
+        }
+        return new long[]{start, end};
+    }
+
+    /** Body range of the first chunk (RIFF) or box (MP4) of the given type at this level. */
+    private static long[] findChunk(FileChannel ch, long pos, long size, String type, ByteOrder order) throws IOException {
+        boolean riff = order == ByteOrder.LITTLE_ENDIAN;
+        while (pos + 8 <= size) {
+            ByteBuffer h = read(ch, pos, 8).order(order);
+            String id = ascii(h, riff ? 0 : 4, 4);
+            long length = h.getInt(riff ? 4 : 0) & 0xFFFFFFFFL;
+            long header = 8;
+            if (!riff && length == 1) { // 64-bit box size
+                length = read(ch, pos + 8, 8).getLong(0);
+                header = 16;
+            } else if (!riff && length == 0) { // box runs to the end of the file
+                length = size - pos;
+            }
+            long body = pos + header;
+            long next = riff ? body + length + (length & 1) : pos + length;
+            if (id.equals(type)) return new long[]{body, Math.min(size, riff ? body + length : next)};
+            if (next <= pos) break;
+            pos = next;
+        }
+        return null;
+    }
+
+    private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining() && ch.read(buf, position + buf.position()) >= 0) {
+            // keep reading until full or at the end of the file
+        }
+        return buf.flip();
+    }
+
+    private static String ascii(ByteBuffer b, int at, int length) {
+        if (at + length > b.limit()) return "";
+        byte[] bytes = new byte[length];
+        b.get(at, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.demo2.media;
+
+/**
+ * Duration and tags read from a media file's headers. Text fields are null when the file has no
+ * such tag; durationMillis and bitrateKbps are 0 when they could not be determined.
+ */
+public record MediaMetadata(long durationMillis, String title, String artist, String album, int bitrateKbps) {
+    public static final MediaMetadata UNKNOWN = new MediaMetadata(0, null, null, null, 0);
+
+    /** Duration rounded to whole seconds, as stored on songs. */
+    public int durationSeconds() {
+        return (int) ((durationMillis + 500) / 1000);
+    }
+}
@@ -0,0 +1,403 @@
+package com.example.demo2.media;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads duration, tags and bitrate from MP3, MP4/M4A and WAV headers in plain Java, with a few
+ * small positional reads per file instead of a native decoder.
+ * <ul>
+ *   <li>MP3: ID3v2 text frames (ID3v1 as fallback), then the first MPEG frame; duration comes from
+ *   its Xing/Info or VBRI header, else from the TLEN frame, else from the bitrate of a CBR stream.</li>
+ *   <li>MP4/M4A: mvhd for duration, the iTunes ilst atoms for tags.</li>
+ *   <li>WAV: the RIFF fmt and data chunks, and the LIST/INFO chunk for tags.</li>
+ * </ul>
+ * Files in other formats, or too damaged to parse, give {@link MediaMetadata#UNKNOWN}.
+ */
+public final class MediaMetadataReader {
+    private static final int MAX_ID3_FRAME = 1 << 16; // text frames are small; skip pictures and the like
+    private static final int MAX_MOOV = 16 << 20;
+    private static final int FRAME_SEARCH = 64 << 10;
+
+    private static final int[][] BITRATES = { // kbps by [version/layer row][index]
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // MPEG1 layer I
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // MPEG1 layer II
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},     // MPEG1 layer III
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // MPEG2/2.5 layer I
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},         // MPEG2/2.5 layer II and III
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private MediaMetadataReader() {}
+
+    public static MediaMetadata read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 12) return MediaMetadata.UNKNOWN;
+            ByteBuffer head = readAt(ch, 0, 12);
+            if (ascii(head, 0, 4).equals("RIFF") && ascii(head, 8, 4).equals("WAVE")) return readWav(ch, size);
+            if (ascii(head, 4, 4).equals("ftyp")) return readMp4(ch, size);
+            return readMp3(ch, size);
+        } catch (RuntimeException e) {
+            // malformed sizes or offsets in a damaged file
+            return MediaMetadata.UNKNOWN;
+        }
+    }
+
+    // ---- MP3 ----
+
+    private static MediaMetadata readMp3(FileChannel ch, long size) throws IOException {
+        Tags tags = new Tags();
+        long audioStart = 0;
+        ByteBuffer id3 = readAt(ch, 0, 10);
+        if (ascii(id3, 0, 3).equals("ID3")) {
+            int major = id3.get(3) & 0xFF;
+            int flags = id3.get(5) & 0xFF;
+            int tagSize = synchsafe(id3, 6);
+            readId3Frames(ch, major, flags, tagSize, tags);
+            audioStart = 10 + tagSize + ((flags & 0x10) != 0 ? 10 : 0);
+        }
+        long audioEnd = size;
+        if (size >= 128) {
+            ByteBuffer v1 = readAt(ch, size - 128, 128);
+            if (ascii(v1, 0, 3).equals("TAG")) {
+                audioEnd -= 128;
+                if (tags.title == null) tags.title = latin1(v1, 3, 30);
+                if (tags.artist == null) tags.artist = latin1(v1, 33, 30);
+                if (tags.album == null) tags.album = latin1(v1, 63, 30);
+            }
+        }
+
+        int window = (int) Math.min(FRAME_SEARCH, Math.max(0, audioEnd - audioStart));
+        ByteBuffer buf = readAt(ch, audioStart, window);
+        int at = findFrame(buf);
+        if (at < 0) return tags.toMetadata(tags.lengthMillis, 0);
+        int header = buf.getInt(at);
+        int versionBits = (header >>> 19) & 3; // 3 = MPEG1, 2 = MPEG2, 0 = MPEG2.5
+        int layer = 4 - ((header >>> 17) & 3);
+        boolean mpeg1 = versionBits == 3;
+        int kbps = bitrate(header);
+        int sampleRate = SAMPLE_RATES[(header >>> 10) & 3] >> (mpeg1 ? 0 : versionBits == 2 ? 1 : 2);
+        boolean mono = ((header >>> 6) & 3) == 3;
+        int samplesPerFrame = layer == 1 ? 384 : (layer == 3 && !mpeg1) ? 576 : 1152;
+
+        // Xing/Info sits after the side information of the first frame, VBRI at a fixed offset
+        int xing = at + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        long frames = -1;
+        long bytes = -1;
+        if (xing + 16 <= buf.limit() && (ascii(buf, xing, 4).equals("Xing") || ascii(buf, xing, 4).equals("Info"))) {
+            int xflags = buf.getInt(xing + 4);
+            int p = xing + 8;
+            if ((xflags & 1) != 0) { frames = buf.getInt(p) & 0xFFFFFFFFL; p += 4; }
+            if ((xflags & 2) != 0 && p + 4 <= buf.limit()) bytes = buf.getInt(p) & 0xFFFFFFFFL;
+        } else if (at + 36 + 18 <= buf.limit() && ascii(buf, at + 36, 4).equals("VBRI")) {
+            bytes = buf.getInt(at + 36 + 10) & 0xFFFFFFFFL;
+            frames = buf.getInt(at + 36 + 14) & 0xFFFFFFFFL;
+        }
+
+        long audioBytes = bytes > 0 ? bytes : audioEnd - audioStart - at;
+        long millis;
+        if (frames > 0) {
+            millis = frames * samplesPerFrame * 1000L / sampleRate;
+        } else if (tags.lengthMillis > 0) {
+            millis = tags.lengthMillis;
+        } else {
+            millis = kbps > 0 ? audioBytes * 8 / kbps : 0; // CBR: bits / (kbit/s) = ms
+        }
+        int avgKbps = millis > 0 && (frames > 0 || tags.lengthMillis > 0) ? (int) (audioBytes * 8 / millis) : kbps;
+        return tags.toMetadata(millis, avgKbps);
+    }
+
+    private static void readId3Frames(FileChannel ch, int major, int flags, int tagSize, Tags tags) throws IOException {
+        long pos = 10;
+        long end = 10L + tagSize;
+        if (major >= 3 && (flags & 0x40) != 0) { // extended header
+            ByteBuffer ext = readAt(ch, pos, 4);
+            pos += major == 4 ? synchsafe(ext, 0) : 4 + ext.getInt(0);
+        }
+        int headerSize = major == 2 ? 6 : 10;
+        while (pos + headerSize <= end) {
+            ByteBuffer h = readAt(ch, pos, headerSize);
+            if (h.get(0) == 0) break; // padding
+            String id;
+            int frameSize;
+            if (major == 2) {
+                id = ascii(h, 0, 3);
+                frameSize = ((h.get(3) & 0xFF) << 16) | ((h.get(4) & 0xFF) << 8) | (h.get(5) & 0xFF);
+            } else {
+                id = ascii(h, 0, 4);
+                frameSize = major == 4 ? synchsafe(h, 4) : h.getInt(4);
+            }
+            if (frameSize <= 0 || pos + headerSize + frameSize > end) break;
+            long body = pos + headerSize;
+            pos = body + frameSize;
+            if (frameSize > MAX_ID3_FRAME) continue;
+            switch (id) {
+                case "TIT2", "TT2" -> tags.title = id3Text(readAt(ch, body, frameSize));
+                case "TPE1", "TP1" -> tags.artist = id3Text(readAt(ch, body, frameSize));
+                case "TALB", "TAL" -> tags.album = id3Text(readAt(ch, body, frameSize));
+                case "TLEN", "TLE" -> {
+                    try {
+                        tags.lengthMillis = Long.parseLong(id3Text(readAt(ch, body, frameSize)).trim());
+                    } catch (NumberFormatException | NullPointerException ignored) {
+                        // not a number, fall back to the frame headers
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private static String id3Text(ByteBuffer b) {
+        if (b.limit() < 1) return null;
+        Charset cs = switch (b.get(0)) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        return clean(new String(b.array(), 1, b.limit() - 1, cs));
+    }
+
+    /** Offset of the first frame header followed by a second valid one, or -1. */
+    private static int findFrame(ByteBuffer buf) {
+        for (int i = 0; i + 4 <= buf.limit(); i++) {
+            if ((buf.get(i) & 0xFF) != 0xFF || (buf.get(i + 1) & 0xE0) != 0xE0) continue;
+            int header = buf.getInt(i);
+            int length = frameLength(header);
+            if (length <= 0) continue;
+            if (i + length + 4 > buf.limit()) return i; // cannot confirm, trust a lone valid header
+            if (frameLength(buf.getInt(i + length)) > 0) return i;
+        }
+        return -1;
+    }
+
+    private static int frameLength(int header) {
+        if ((header >>> 21) != 0x7FF) return -1;
+        int versionBits = (header >>> 19) & 3;
+        int layerBits = (header >>> 17) & 3;
+        int rateIndex = (header >>> 10) & 3;
+        if (versionBits == 1 || layerBits == 0 || rateIndex == 3) return -1;
+        int kbps = bitrate(header);
+        if (kbps <= 0) return -1;
+        boolean mpeg1 = versionBits == 3;
+        int layer = 4 - layerBits;
+        int sampleRate = SAMPLE_RATES[rateIndex] >> (mpeg1 ? 0 : versionBits == 2 ? 1 : 2);
+        int padding = (header >>> 9) & 1;
+        if (layer == 1) return (12 * kbps * 1000 / sampleRate + padding) * 4;
+        int coefficient = (layer == 3 && !mpeg1) ? 72 : 144;
+        return coefficient * kbps * 1000 / sampleRate + padding;
+    }
+
+    private static int bitrate(int header) {
+        int index = (header >>> 12) & 0xF;
+        if (index == 0 || index == 15) return -1;
+        boolean mpeg1 = ((header >>> 19) & 3) == 3;
+        int layer = 4 - ((header >>> 17) & 3);
+        int row = mpeg1 ? layer - 1 : (layer == 1 ? 3 : 4);
+        return BITRATES[row][index];
+    }
+
+    // ---- MP4 / M4A ----
+
+    private static MediaMetadata readMp4(FileChannel ch, long size) throws IOException {
+        long pos = 0;
+        while (pos + 8 <= size) {
+            ByteBuffer h = readAt(ch, pos, 8);
+            long boxSize = h.getInt(0) & 0xFFFFFFFFL;
+            String type = ascii(h, 4, 4);
+            int headerSize = 8;
+            if (boxSize == 1) {
+                boxSize = readAt(ch, pos + 8, 8).getLong(0);
+                headerSize = 16;
+            } else if (boxSize == 0) {
+                boxSize = size - pos;
+            }
+            if (boxSize < headerSize) break;
+            if (type.equals("moov")) {
+                if (boxSize - headerSize > MAX_MOOV) break;
+                ByteBuffer moov = readAt(ch, pos + headerSize, (int) (boxSize - headerSize));
+                return parseMoov(moov, size);
+            }
+            pos += boxSize;
+        }
+        return MediaMetadata.UNKNOWN;
+    }
+
+    private static MediaMetadata parseMoov(ByteBuffer moov, long fileSize) {
+        Tags tags = new Tags();
+        long millis = 0;
+        for (int p = 0; p + 8 <= moov.limit(); ) {
+            int boxSize = moov.getInt(p);
+            if (boxSize < 8 || p + boxSize > moov.limit()) break;
+            String type = ascii(moov, p + 4, 4);
+            if (type.equals("mvhd")) {
+                int version = moov.get(p + 8) & 0xFF;
+                long timescale;
+                long duration;
+                if (version == 1) {
+                    timescale = moov.getInt(p + 28) & 0xFFFFFFFFL;
+                    duration = moov.getLong(p + 32);
+                } else {
+                    timescale = moov.getInt(p + 20) & 0xFFFFFFFFL;
+                    duration = moov.getInt(p + 24) & 0xFFFFFFFFL;
+                }
+                if (timescale > 0) millis = duration * 1000 / timescale;
+            } else if (type.equals("udta")) {
+                parseUdta(moov.slice(p + 8, boxSize - 8), tags);
+            }
+            p += boxSize;
+        }
+        int kbps = millis > 0 ? (int) (fileSize * 8 / millis) : 0;
+        return tags.toMetadata(millis, kbps);
+    }
+
+    private static void parseUdta(ByteBuffer udta, Tags tags) {
+        for (int p = 0; p + 8 <= udta.limit(); ) {
+            int boxSize = udta.getInt(p);
+            if (boxSize < 8 || p + boxSize > udta.limit()) break;
+            if (ascii(udta, p + 4, 4).equals("meta")) {
+                // ISO meta is a full box with 4 bytes of version and flags; QuickTime meta is not
+                int children = p + 8;
+                if (children + 8 <= p + boxSize && !ascii(udta, children + 4, 4).equals("hdlr")) children += 4;
+                ByteBuffer meta = udta.slice(children, p + boxSize - children);
+                for (int q = 0; q + 8 <= meta.limit(); ) {
+                    int size = meta.getInt(q);
+                    if (size < 8 || q + size > meta.limit()) break;
+                    if (ascii(meta, q + 4, 4).equals("ilst")) parseIlst(meta.slice(q + 8, size - 8), tags);
+                    q += size;
+                }
+            }
+            p += boxSize;
+        }
+    }
+
+    private static void parseIlst(ByteBuffer ilst, Tags tags) {
+        for (int p = 0; p + 8 <= ilst.limit(); ) {
+            int itemSize = ilst.getInt(p);
+            if (itemSize < 8 || p + itemSize > ilst.limit()) break;
+            String name = new String(new byte[]{ilst.get(p + 4), ilst.get(p + 5), ilst.get(p + 6), ilst.get(p + 7)},
+                    StandardCharsets.ISO_8859_1);
+            int data = p + 8;
+            // data box: size, "data", 4 bytes type indicator, 4 bytes locale, then the value
+            if (data + 16 <= p + itemSize && ascii(ilst, data + 4, 4).equals("data")) {
+                int dataSize = ilst.getInt(data);
+                int length = Math.min(dataSize, p + itemSize - data) - 16;
+                if (length > 0) {
+                    byte[] value = new byte[length];
+                    ilst.get(data + 16, value);
+                    String text = clean(new String(value, StandardCharsets.UTF_8));
+                    switch (name) {
+                        case "©nam" -> tags.title = text;
+                        case "©ART" -> tags.artist = text;
+                        case "©alb" -> tags.album = text;
+                        default -> { }
+                    }
+                }
+            }
+            p += itemSize;
+        }
+    }
+
+    // ---- WAV ----
+
+    private static MediaMetadata readWav(FileChannel ch, long size) throws IOException {
+        Tags tags = new Tags();
+        long byteRate = 0;
+        long dataSize = 0;
+        long pos = 12;
+        while (pos + 8 <= size) {
+            ByteBuffer h = readAt(ch, pos, 8).order(ByteOrder.LITTLE_ENDIAN);
+            String id = ascii(h, 0, 4);
+            long chunkSize = h.getInt(4) & 0xFFFFFFFFL;
+            long body = pos + 8;
+            switch (id) {
+                case "fmt " -> {
+                    ByteBuffer fmt = readAt(ch, body, 16).order(ByteOrder.LITTLE_ENDIAN);
+                    byteRate = fmt.getInt(8) & 0xFFFFFFFFL;
+                }
+                case "data" -> dataSize = Math.min(chunkSize, size - body); // streamed files may declare too much
+                case "LIST" -> {
+                    if (chunkSize <= MAX_ID3_FRAME) readWavInfo(readAt(ch, body, (int) chunkSize), tags);
+                }
+                default -> { }
+            }
+            pos = body + chunkSize + (chunkSize & 1); // chunks are word aligned
+        }
+        long millis = byteRate > 0 ? dataSize * 1000 / byteRate : 0;
+        return tags.toMetadata(millis, (int) (byteRate * 8 / 1000));
+    }
+
+    private static void readWavInfo(ByteBuffer list, Tags tags) {
+        list.order(ByteOrder.LITTLE_ENDIAN);
+        if (list.limit() < 4 || !ascii(list, 0, 4).equals("INFO")) return;
+        for (int p = 4; p + 8 <= list.limit(); ) {
+            String id = ascii(list, p, 4);
+            int length = list.getInt(p + 4);
+            if (length < 0 || p + 8 + length > list.limit()) break;
+            String text = clean(new String(list.array(), p + 8, length, StandardCharsets.UTF_8));
+            switch (id) {
+                case "INAM" -> tags.title = text;
+                case "IART" -> tags.artist = text;
+                case "IPRD" -> tags.album = text;
+                default -> { }
+            }
+            p += 8 + length + (length & 1);
+        }
+    }
+
+    // ---- helpers ----
+
+    private static final class Tags {
+        String title;
+        String artist;
+        String album;
+        long lengthMillis;
+
+        MediaMetadata toMetadata(long millis, int kbps) {
+            return new MediaMetadata(Math.max(0, millis), title, artist, album, Math.max(0, kbps));
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) {
+                if (buf.position() == 0 && length > 0) throw new EOFException("Unexpected end of file");
+                break;
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static int synchsafe(ByteBuffer b, int at) {
+        return ((b.get(at) & 0x7F) << 21) | ((b.get(at + 1) & 0x7F) << 14) | ((b.get(at + 2) & 0x7F) << 7) | (b.get(at + 3) & 0x7F);
+    }
+
+    private static String ascii(ByteBuffer b, int at, int length) {
+        if (at < 0 || at + length > b.limit()) return "";
+        byte[] bytes = new byte[length];
+        b.get(at, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String latin1(ByteBuffer b, int at, int length) {
+        return clean(ascii(b, at, length));
+    }
+
+    /** Trims padding and terminators; blank values count as absent. */
+    private static String clean(String s) {
+        int end = s.indexOf('\0');
+        String v = (end >= 0 ? s.substring(0, end) : s).trim();
+        return v.isEmpty() ? null : v;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.demo2.media;
+
+import com.example.demo2.entities.Song;
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.scene.media.MediaPlayer;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Plays a queue of songs with the next track always loaded ahead. While a track plays, the player
+ * for the following one is created and left paused once READY, so at end of media (or on
+ * {@link #next()}) playback continues on a player that needs no load time. Outgoing players are
+ * released to {@link PlaybackResources}, never just stopped. Use from the FX thread only.
+ * <p>
+ * With a crossfade set, the next track starts that many seconds before the current one ends and
+ * the two are mixed with equal-power volume ramps, stepped on every animation pulse. At most two
+ * players exist at any time: during a fade the outgoing and the incoming track, otherwise the
+ * current and the prepared one. The track after next is therefore prepared only once a fade is
+ * over, and a skip during a fade drops the outgoing player at once. The animation timer only runs
+ * from the moment the current track enters its last {@code crossfade} seconds until the fade is
+ * over; before that the engine just watches the player's time, which costs no extra pulses.
+ */
+public class PlaybackEngine {
+
+    /** Called on the FX thread. */
+    public interface Listener {
+        /** A track started playing on {@code player}, which stays current until the next call. */
+        void onTrackStarted(Song song, MediaPlayer player);
+
+        void onQueueFinished();
+
+        void onError(Song song, String message);
+    }
+
+    private final Listener listener;
+    private final PlaybackResources resources = PlaybackResources.getInstance();
+    private final AnimationTimer fadeTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            tick(now);
+        }
+    };
+    private List<Song> queue = List.of();
+    private int index = -1;
+    private MediaPlayer current;
+    private MediaPlayer preparedPlayer;
+    private int preparedIndex = -1;
+    private double crossfadeSeconds;
+    private MediaPlayer outgoing; // fading out under current, non-null only during a fade
+    private final InvalidationListener fadeWindowWatch = obs -> checkFadeWindow();
+    private MediaPlayer watched; // player whose time fadeWindowWatch follows
+    private long fadeStartNanos;
+
+    public PlaybackEngine(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Overlap between consecutive tracks; 0 switches crossfading off. */
+    public void setCrossfadeSeconds(double seconds) {
+        crossfadeSeconds = Math.max(0, seconds);
+        checkFadeWindow();
+    }
+
+    public double getCrossfadeSeconds() {
+        return crossfadeSeconds;
+    }
+
+    /** Starts playing {@code queue} at {@code startIndex}; the list is copied. */
+    public void play(List<Song> queue, int startIndex) {
+        if (startIndex < 0 || startIndex >= queue.size()) return;
+        this.queue = List.copyOf(queue);
+        discardPrepared();
+        playAt(startIndex);
+    }
+
+    public void next() {
+        if (index >= 0) playAt(index + 1);
+    }
+
+    public void previous() {
+        if (index > 0) playAt(index - 1);
+    }
+
+    /** Pauses the current track; a fade in progress is cut short. */
+    public void pause() {
+        finishFade();
+        fadeTimer.stop();
+        if (current != null) current.pause();
+    }
+
+    public void resume() {
+        if (current == null) return;
+        current.play();
+        checkFadeWindow();
+    }
+
+    /** Stops playback and releases every player. */
+    public void stop() {
+        fadeTimer.stop();
+        watch(null);
+        finishFade();
+        discardPrepared();
+        if (current != null) {
+            resources.release(current);
+            current = null;
+        }
+        index = -1;
+    }
+
+    /** Player of the current track, or null when stopped. */
+    public MediaPlayer player() {
+        return current;
+    }
+
+    private void playAt(int i) {
+        finishFade();
+        watch(null);
+        if (current != null) {
+            resources.release(current);
+            current = null;
+        }
+        if (i >= queue.size()) {
+            fadeTimer.stop();
+            discardPrepared();
+            index = -1;
+            listener.onQueueFinished();
+            return;
+        }
+        index = i;
+        Song song = queue.get(i);
+        MediaPlayer player = takePrepared(i);
+        if (player == null) {
+            player = create(song);
+            if (player == null) {
+                playAt(i + 1);
+                return;
+            }
+        }
+        current = player;
+        listen(song, player);
+        // READY already for a prepared player; play() then starts without waiting for a load
+        if (isLoaded(player)) {
+            start(song, player);
+        } else {
+            MediaPlayer loading = player;
+            player.setOnReady(() -> {
+                if (loading == current) start(song, loading);
+            });
+        }
+    }
+
+    private void listen(Song song, MediaPlayer player) {
+        player.setOnEndOfMedia(() -> {
+            if (player == outgoing) finishFade();
+            else if (player == current) playAt(index + 1);
+        });
+        player.setOnError(() -> {
+            if (player == outgoing) {
+                finishFade();
+            } else if (player == current) {
+                listener.onError(song, String.valueOf(player.getError()));
+                playAt(index + 1);
+            }
+        });
+    }
+
+    private void start(Song song, MediaPlayer player) {
+        player.setVolume(1.0);
+        player.play();
+        listener.onTrackStarted(song, player);
+        prepare(index + 1);
+        watch(player);
+    }
+
+    /** Follows the player's time so the fade timer can be started when the fade window opens. */
+    private void watch(MediaPlayer player) {
+        if (watched != null) watched.currentTimeProperty().removeListener(fadeWindowWatch);
+        watched = player;
+        if (player != null) {
+            player.currentTimeProperty().addListener(fadeWindowWatch);
+            checkFadeWindow();
+        }
+    }
+
+    private void checkFadeWindow() {
+        // reading the time in inFadeWindow also re-arms the invalidation listener
+        if (inFadeWindow() && outgoing == null) fadeTimer.start();
+    }
+
+    /** True in the current track's last crossfade seconds, when it is long enough to fade. */
+    private boolean inFadeWindow() {
+        if (current == null) return false;
+        double position = current.getCurrentTime().toSeconds();
+        if (crossfadeSeconds <= 0) return false;
+        double total = current.getTotalDuration().toSeconds();
+        // tracks shorter than two fades play out in full
+        if (Double.isNaN(total) || Double.isInfinite(total) || total < 2 * crossfadeSeconds) return false;
+        return total - position <= crossfadeSeconds;
+    }
+
+    private void tick(long now) {
+        if (outgoing != null) {
+            double t = (now - fadeStartNanos) / (crossfadeSeconds * 1e9);
+            if (t >= 1) {
+                finishFade();
+                return;
+            }
+            outgoing.setVolume(Math.cos(t * Math.PI / 2));
+            current.setVolume(Math.sin(t * Math.PI / 2));
+            return;
+        }
+        // outside the window, or paused (a seek or resume starts the timer again)
+        if (!inFadeWindow() || current.getStatus() != MediaPlayer.Status.PLAYING) {
+            fadeTimer.stop();
+            return;
+        }
+        // the next track may still be loading; keep polling while the window is open
+        if (preparedIndex == index + 1 && isLoaded(preparedPlayer)) beginFade(now);
+    }
+
+    /** Starts the prepared next track silently under the current one. */
+    private void beginFade(long now) {
+        outgoing = current;
+        fadeStartNanos = now;
+        index++;
+        Song song = queue.get(index);
+        current = takePrepared(index);
+        watch(current);
+        listen(song, current);
+        current.setVolume(0);
+        current.play();
+        listener.onTrackStarted(song, current);
+    }
+
+    /** Ends a fade in progress, releasing the outgoing player; the next track is prepared only now. */
+    private void finishFade() {
+        if (outgoing == null) return;
+        resources.release(outgoing);
+        outgoing = null;
+        if (current != null) {
+            current.setVolume(1.0);
+            prepare(index + 1);
+        }
+    }
+
+    /** Loads the player for queue entry {@code i} so it is READY by the time it is needed. */
+    private void prepare(int i) {
+        if (i == preparedIndex || outgoing != null) return;
+        discardPrepared();
+        if (i >= queue.size()) return;
+        MediaPlayer player = create(queue.get(i));
+        if (player == null) return;
+        preparedPlayer = player;
+        preparedIndex = i;
+        player.setOnError(() -> {
+            // leave the error to surface if it is played
+            if (player == preparedPlayer) discardPrepared();
+        });
+    }
+
+    private MediaPlayer takePrepared(int i) {
+        if (preparedIndex != i) {
+            discardPrepared();
+            return null;
+        }
+        MediaPlayer player = preparedPlayer;
+        preparedPlayer = null;
+        preparedIndex = -1;
+        return player;
+    }
+
+    private void discardPrepared() {
+        resources.release(preparedPlayer);
+        preparedPlayer = null;
+        preparedIndex = -1;
+    }
+
+    private static boolean isLoaded(MediaPlayer player) {
+        MediaPlayer.Status status = player.getStatus();
+        return status == MediaPlayer.Status.READY || status == MediaPlayer.Status.PAUSED;
+    }
+
+    private MediaPlayer create(Song song) {
+        try {
+            return resources.createPlayer(new File(song.getFilePath()));
+        } catch (RuntimeException e) {
+            listener.onError(song, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.demo2.media;
+
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Owner of every MediaPlayer in the application. Each player holds a native pipeline with its own
+ * buffers until disposed, so players are created and released only through here. The number alive
+ * is capped at {@value #MAX_PLAYERS}: past it, creating a player fails rather than disposing one
+ * that may still be playing or fading out, so a caller that forgets to release gets an error
+ * instead of silencing another. Media objects of recently played files are kept in a small LRU
+ * and reused for new players of the same file. Use from the FX thread only.
+ */
+public final class PlaybackResources {
+    private static final int MAX_PLAYERS = 4;
+    private static final int MEDIA_CACHE_SIZE = 16;
+    private static final PlaybackResources INSTANCE = new PlaybackResources();
+
+    private final Set<MediaPlayer> live = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, Media> recentMedia = new LinkedHashMap<>(MEDIA_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Media> eldest) {
+            return size() > MEDIA_CACHE_SIZE;
+        }
+    };
+
+    private PlaybackResources() {}
+
+    public static PlaybackResources getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * New player for the file; give it back with {@link #release} when done.
+     *
+     * @throws IllegalStateException when {@value #MAX_PLAYERS} players are alive
+     */
+    public MediaPlayer createPlayer(File file) {
+        if (live.size() >= MAX_PLAYERS) {
+            throw new IllegalStateException("Too many media players alive (" + live.size() + "), one is not released");
+        }
+        String uri = file.toURI().toString();
+        Media media = recentMedia.get(uri);
+        if (media == null || media.getError() != null) {
+            media = new Media(uri);
+            recentMedia.put(uri, media);
+        }
+        MediaPlayer player = new MediaPlayer(media);
+        live.add(player);
+        return player;
+    }
+
+    /** Disposes the player and frees its native resources; null and repeated calls are ignored. */
+    public void release(MediaPlayer player) {
+        if (player != null && live.remove(player)) player.dispose();
+    }
+
+    /** Players created and not yet released. */
+    public int livePlayers() {
+        return live.size();
+    }
+}
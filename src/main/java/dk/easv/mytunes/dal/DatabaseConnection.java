@@ -2,7 +2,6 @@
 package dk.easv.mytunes.dal;
 
 import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
-import com.microsoft.sqlserver.jdbc.SQLServerException;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -18,7 +17,16 @@ public class DatabaseConnection {
     private final String user;
     private final String password;
 
-    public DatabaseConnection() throws SQLServerException {
+    public DatabaseConnection() {
+        this("EASV-DB4", 1433, "natbur001_MyTunes", "CS2025b_e_4", "CS2025bE4#23");
+    }
+
+    /**
+     * Same env-driven configuration as the default constructor, but with caller supplied
+     * defaults for any DB_* variable that is not set.
+     */
+    public DatabaseConnection(String defaultServer, int defaultPort, String defaultDatabase,
+                              String defaultUser, String defaultPassword) {
         this.ds = new SQLServerDataSource();
 
         this.jdbcUrl = getenv("JDBC_URL", "").trim();
@@ -30,20 +38,26 @@ public class DatabaseConnection {
             this.password = getenv("DB_PASSWORD", "");
         } else {
             // per-field configuration with sensible defaults
-            ds.setDatabaseName(getenv("DB_NAME", "natbur001_MyTunes"));
-            ds.setUser(getenv("DB_USER", "CS2025b_e_4"));
-            ds.setPassword(getenv("DB_PASSWORD", "CS2025bE4#23"));
-            ds.setServerName(getenv("DB_SERVER", "EASV-DB4"));
+            ds.setDatabaseName(getenv("DB_NAME", defaultDatabase));
+            ds.setUser(getenv("DB_USER", defaultUser));
+            ds.setPassword(getenv("DB_PASSWORD", defaultPassword));
+            ds.setServerName(getenv("DB_SERVER", defaultServer));
+            ds.setEncrypt("true");
+            ds.setTrustServerCertificate(Boolean.parseBoolean(getenv("DB_TRUST_SERVER_CERTIFICATE", "true")));
 
-            int port = 1433;
+            int port = defaultPort;
             try {
-                port = Integer.parseInt(getenv("DB_PORT", "1433"));
+                port = Integer.parseInt(getenv("DB_PORT", String.valueOf(defaultPort)));
             } catch (NumberFormatException ignored) { }
             ds.setPortNumber(port);
             this.user = ds.getUser();
-            this.password = String.valueOf(ds.getConnection());
-
+            this.password = getenv("DB_PASSWORD", defaultPassword);
         }
+
+        // keep an unreachable server from stalling callers for the driver's default 15s
+        try {
+            ds.setLoginTimeout(Integer.parseInt(getenv("DB_LOGIN_TIMEOUT", "5")));
+        } catch (NumberFormatException ignored) { }
     }
 
     private String getenv(String key, String def) {
@@ -51,11 +65,20 @@ public class DatabaseConnection {
         return (v == null || v.isBlank()) ? def : v;
     }
 
+    /** The URL connections are opened with, as given by JDBC_URL or built from the DB_* settings. */
+    public String getJdbcUrl() {
+        return jdbcUrl.isEmpty() ? ds.getURL() : jdbcUrl;
+    }
+
     /**
      * Get a live connection. First tries the configured SQLServerDataSource;
      * if that fails and a JDBC_URL was provided, tries DriverManager as a fallback.
      */
     public Connection getConnection() throws SQLException {
+        if (!jdbcUrl.isEmpty() && !jdbcUrl.startsWith("jdbc:sqlserver:")) {
+            // another driver's URL, e.g. a SQLite file; the SQL Server data source cannot open it
+            return DriverManager.getConnection(jdbcUrl, user, password);
+        }
         try {
             return ds.getConnection();
         } catch (SQLException firstEx) {
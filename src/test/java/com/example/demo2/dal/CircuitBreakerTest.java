@@ -0,0 +1,65 @@
+package com.example.demo2.dal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CircuitBreaker Tests")
+class CircuitBreakerTest {
+
+    @Test
+    @DisplayName("A failure opens the breaker and requests fail fast")
+    void testFailureOpensBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test", () -> { throw new Exception("down"); }, 1, 60_000, 60_000);
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure(new Exception("connect failed"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    @DisplayName("Breaker trips only after the configured number of consecutive failures")
+    void testFailureThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker("test", () -> { }, 3, 60_000, 60_000);
+        breaker.recordFailure(null);
+        breaker.recordFailure(null);
+        breaker.recordSuccess();
+        breaker.recordFailure(null);
+        breaker.recordFailure(null);
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure(null);
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    @DisplayName("Background probe closes the breaker again once the probe succeeds")
+    void testProbeRecovers() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        CircuitBreaker breaker = new CircuitBreaker("test", () -> {
+            if (attempts.incrementAndGet() < 3) throw new Exception("still down");
+        }, 1, 5, 20);
+        List<CircuitBreaker.State> seen = new CopyOnWriteArrayList<>();
+        CountDownLatch closed = new CountDownLatch(1);
+        breaker.addListener((from, to) -> {
+            seen.add(to);
+            if (to == CircuitBreaker.State.CLOSED) closed.countDown();
+        });
+
+        breaker.recordFailure(new Exception("connect failed"));
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS), "Breaker should recover after the probe succeeds");
+        assertTrue(breaker.allowRequest());
+        assertEquals(3, attempts.get());
+        assertEquals(List.of(CircuitBreaker.State.OPEN,
+                CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.OPEN,
+                CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.OPEN,
+                CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), seen);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demo2.dal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ConcurrentIntObjectMap and IntList Tests")
+class ConcurrentIntObjectMapTest {
+
+    @Test
+    @DisplayName("Random puts and removes agree with a HashMap")
+    void testMatchesHashMap() {
+        ConcurrentIntObjectMap<String> map = new ConcurrentIntObjectMap<>();
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -100; key < 4_900; key++) {
+            assertEquals(expected.get(key), map.get(key), "key " + key);
+        }
+        Map<Integer, String> visited = new HashMap<>();
+        map.forEachKey(k -> visited.put(k, map.get(k)));
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    @DisplayName("IntList versions stay unchanged when a newer version appends")
+    void testIntListAppendKeepsOldVersions() {
+        IntList a = IntList.EMPTY.append(1).append(2);
+        IntList b = a.append(3);
+        IntList c = a.append(4); // slot already claimed by b, must copy
+        assertArrayEquals(new int[]{1, 2}, a.toArray());
+        assertArrayEquals(new int[]{1, 2, 3}, b.toArray());
+        assertArrayEquals(new int[]{1, 2, 4}, c.toArray());
+    }
+
+    @Test
+    @DisplayName("IntList move, remove and insert")
+    void testIntListEdits() {
+        IntList list = IntList.of(10, 20, 30, 40);
+        assertArrayEquals(new int[]{20, 30, 10, 40}, list.move(0, 2).toArray());
+        assertArrayEquals(new int[]{40, 10, 20, 30}, list.move(3, 0).toArray());
+        assertArrayEquals(new int[]{10, 30, 40}, list.removeAt(1).toArray());
+        assertArrayEquals(new int[]{10, 15, 20, 30, 40}, list.insertAt(1, 15).toArray());
+        assertArrayEquals(new int[]{10, 30}, IntList.of(20, 10, 20, 30).removeAll(20).toArray());
+        assertSame(list, list.removeAll(99));
+    }
+}
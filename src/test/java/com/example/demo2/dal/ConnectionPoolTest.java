@@ -0,0 +1,103 @@
+package com.example.demo2.dal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ConnectionPool Tests")
+class ConnectionPoolTest {
+
+    private static ConnectionPool newPool(AtomicInteger opened, int maxSize) {
+        return new ConnectionPool(() -> {
+            opened.incrementAndGet();
+            return DriverManager.getConnection("jdbc:sqlite::memory:");
+        }, maxSize, 60_000, 60_000, 200, 8);
+    }
+
+    @Test
+    @DisplayName("Closing a connection returns it to the pool for reuse")
+    void testConnectionIsReused() throws SQLException {
+        AtomicInteger opened = new AtomicInteger();
+        try (ConnectionPool pool = newPool(opened, 2)) {
+            try (Connection c = pool.borrow()) {
+                assertFalse(c.isClosed());
+            }
+            try (Connection c = pool.borrow()) {
+                assertFalse(c.isClosed());
+            }
+            assertEquals(1, opened.get(), "Second borrow should reuse the idle physical connection");
+        }
+    }
+
+    @Test
+    @DisplayName("Borrow times out when every connection is checked out")
+    void testBorrowTimesOutWhenExhausted() throws SQLException {
+        try (ConnectionPool pool = newPool(new AtomicInteger(), 1);
+             Connection held = pool.borrow()) {
+            assertNotNull(held);
+            assertThrows(SQLException.class, pool::borrow);
+        }
+    }
+
+    @Test
+    @DisplayName("Prepared statements are cached per physical connection")
+    void testPreparedStatementCache() throws SQLException {
+        try (ConnectionPool pool = newPool(new AtomicInteger(), 1)) {
+            PreparedStatement first;
+            PreparedStatement firstPhysical;
+            try (Connection c = pool.borrow(); PreparedStatement ps = c.prepareStatement("SELECT ?")) {
+                ps.setInt(1, 1);
+                ps.executeQuery().close();
+                first = ps;
+                firstPhysical = ps.unwrap(PreparedStatement.class);
+            }
+            assertTrue(first.isClosed());
+            try (Connection c = pool.borrow(); PreparedStatement ps = c.prepareStatement("SELECT ?")) {
+                ps.setInt(1, 2);
+                try (var rs = ps.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(2, rs.getInt(1));
+                }
+                assertSame(firstPhysical, ps.unwrap(PreparedStatement.class),
+                        "The same physical statement should be handed out again");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Statements hand back the pooled connection, never the physical one")
+    void testStatementsReturnPooledConnection() throws SQLException {
+        try (ConnectionPool pool = newPool(new AtomicInteger(), 1);
+             Connection c = pool.borrow();
+             Statement st = c.createStatement();
+             PreparedStatement ps = c.prepareStatement("SELECT 1")) {
+            assertSame(c, st.getConnection());
+            assertSame(c, ps.getConnection());
+            try (ResultSet rs = st.executeQuery("SELECT 1")) {
+                assertTrue(rs.next());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Uncommitted work is rolled back when a connection is returned")
+    void testReturnResetsAutoCommit() throws SQLException {
+        try (ConnectionPool pool = newPool(new AtomicInteger(), 1)) {
+            try (Connection c = pool.borrow()) {
+                c.setAutoCommit(false);
+            }
+            try (Connection c = pool.borrow()) {
+                assertTrue(c.getAutoCommit());
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.demo2.dal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("IdAllocator Tests")
+class IdAllocatorTest {
+
+    /** id_sequences row of a server that can be switched off. */
+    private static final class FakeServer implements IdAllocator.BlockSource {
+        int nextValue = 1;
+        boolean online = true;
+
+        @Override
+        public int reserve(String sequence, int minNext, int size) throws SQLException {
+            if (!online) throw new SQLException("offline");
+            int first = Math.max(nextValue, minNext);
+            nextValue = first + size;
+            return first;
+        }
+    }
+
+    /** Local store that records every id handed out as a stored row. */
+    private static final class FakeLocal implements IdAllocator.LocalIds {
+        int[] block;
+        int maxId;
+
+        @Override
+        public int[] loadBlock(String sequence) {
+            return block;
+        }
+
+        @Override
+        public void saveBlock(String sequence, int next, int end) {
+            block = new int[]{next, end};
+        }
+
+        @Override
+        public int maxId(String table) {
+            return maxId;
+        }
+    }
+
+    @Test
+    @DisplayName("Ids taken offline are not handed out again after reconnecting")
+    void testIdsStayUniqueAcrossReconnect() {
+        FakeServer server = new FakeServer();
+        FakeLocal local = new FakeLocal();
+        IdAllocator allocator = new IdAllocator("songs", local, server);
+        Set<Integer> seen = new HashSet<>();
+
+        take(allocator, local, seen, 30);
+        server.online = false;
+        // uses up the server block, then continues in local blocks the server never sees
+        take(allocator, local, seen, 250);
+        assertEquals(101, server.nextValue);
+        server.online = true;
+        take(allocator, local, seen, 150);
+
+        assertEquals(430, seen.size());
+        assertTrue(server.nextValue > local.maxId, "Server sequence should have moved past the offline ids");
+    }
+
+    @Test
+    @DisplayName("A restarted allocator continues past ids stored after its saved block")
+    void testRestoreSkipsStoredIds() {
+        FakeServer server = new FakeServer();
+        FakeLocal local = new FakeLocal();
+        local.block = new int[]{5, 50};
+        local.maxId = 20;
+        IdAllocator allocator = new IdAllocator("songs", local, server);
+        assertEquals(21, allocator.next());
+    }
+
+    private static void take(IdAllocator allocator, FakeLocal local, Set<Integer> seen, int count) {
+        int[] ids = allocator.allocate(count);
+        for (int id : ids) assertTrue(seen.add(id), "Id " + id + " handed out twice");
+        local.maxId = Math.max(local.maxId, Arrays.stream(ids).max().orElse(0));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo2.dal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SqlDialect Tests")
+class SqlDialectTest {
+
+    @Test
+    @DisplayName("SQLite renumbering respaces keys in order without key collisions")
+    void testSqliteRenumberPlaylist() throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE playlist_songs (playlist_id INT NOT NULL, position INT NOT NULL, " +
+                    "song_id INT NOT NULL, PRIMARY KEY (playlist_id, position))");
+            // 1024 and 2048 are already taken, so a one-pass renumber would collide
+            st.executeUpdate("INSERT INTO playlist_songs VALUES (1, 0, 10), (1, 1, 11), (1, 1024, 12), " +
+                    "(1, 1025, 13), (1, 2048, 14), (2, 7, 20)");
+            int updated = 0;
+            for (String sql : SqlDialect.SQLITE.renumberPlaylist(OrderKeys.GAP)) {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setInt(1, 1);
+                    updated = ps.executeUpdate();
+                }
+            }
+            assertEquals(5, updated);
+            assertEquals(List.of("1:0:10", "1:1024:11", "1:2048:12", "1:3072:13", "1:4096:14", "2:7:20"), rows(st));
+        }
+    }
+
+    @Test
+    @DisplayName("SQLite id block reservation never starts below the given minimum")
+    void testSqliteReserveIdBlock() throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement st = c.createStatement()) {
+            st.executeUpdate("CREATE TABLE id_sequences (name TEXT PRIMARY KEY, next_value INT NOT NULL)");
+            st.executeUpdate("INSERT INTO id_sequences VALUES ('songs', 101)");
+            assertEquals(101, reserve(c, 1, 100));
+            assertEquals(500, reserve(c, 500, 100));
+            assertEquals(600, reserve(c, 1, 100));
+        }
+    }
+
+    private static int reserve(Connection c, int minNext, int size) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(SqlDialect.SQLITE.reserveIdBlock())) {
+            ps.setInt(1, minNext);
+            ps.setInt(2, size);
+            ps.setString(3, "songs");
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static List<String> rows(Statement st) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery("SELECT playlist_id, position, song_id FROM playlist_songs " +
+                "ORDER BY playlist_id, position")) {
+            while (rs.next()) rows.add(rs.getInt(1) + ":" + rs.getInt(2) + ":" + rs.getInt(3));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.demo2.dal;
+
+import com.example.demo2.entities.Song;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TrigramIndex Tests")
+class TrigramIndexTest {
+
+    private static Song song(int id, String title, String artist) {
+        return new Song(id, title, artist, 180, "/music/" + id + ".mp3");
+    }
+
+    @Test
+    @DisplayName("Substring queries match title or artist, ignoring case")
+    void testSearch() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(song(1, "Bohemian Rhapsody", "Queen"));
+        index.put(song(2, "Under Pressure", "Queen & David Bowie"));
+        index.put(song(3, "Heroes", "David Bowie"));
+
+        assertArrayEquals(new int[]{2, 3}, index.search("BOWIE"));
+        assertArrayEquals(new int[]{1}, index.search("mian rh"));
+        assertArrayEquals(new int[]{1, 2}, index.search("ue"));
+        // every trigram occurs, but not in sequence
+        assertArrayEquals(new int[0], index.search("queenqueen"));
+        // no match across the title/artist boundary
+        assertArrayEquals(new int[0], index.search("sodyqueen"));
+    }
+
+    @Test
+    @DisplayName("Updates and removals keep the posting lists current")
+    void testUpdateAndRemove() {
+        TrigramIndex index = new TrigramIndex();
+        Song s = song(7, "Yesterday", "The Beatles");
+        index.put(s);
+        s.setTitle("Let It Be");
+        index.put(s);
+        assertArrayEquals(new int[0], index.search("yesterday"));
+        assertArrayEquals(new int[]{7}, index.search("let it"));
+        index.remove(7);
+        assertArrayEquals(new int[0], index.search("beatles"));
+    }
+
+    @Test
+    @DisplayName("A saved index is reused only for the same songs")
+    void testSaveAndLoad(@TempDir Path dir) {
+        Path file = dir.resolve("songs.trigram");
+        List<Song> songs = List.of(song(1, "Hey Jude", "The Beatles"), song(2, "Imagine", "John Lennon"));
+        TrigramIndex index = new TrigramIndex();
+        index.loadOrBuild(file, songs);
+        index.save(file);
+
+        TrigramIndex loaded = new TrigramIndex();
+        loaded.loadOrBuild(file, songs);
+        assertArrayEquals(new int[]{2}, loaded.search("lennon"));
+
+        TrigramIndex changed = new TrigramIndex();
+        changed.loadOrBuild(file, List.of(song(1, "Hey Jude", "The Beatles"), song(2, "Jealous Guy", "John Lennon")));
+        assertArrayEquals(new int[]{2}, changed.search("jealous"));
+        assertArrayEquals(new int[0], changed.search("imagine"));
+    }
+
+    @Test
+    @DisplayName("Matching a single song agrees with searching the index")
+    void testMatchesAgreesWithSearch() {
+        TrigramIndex index = new TrigramIndex();
+        List<Song> songs = List.of(song(1, "Hey Jude", "The Beatles"), song(2, "Imagine", "John Lennon"),
+                song(3, "Beat It", "Michael Jackson"));
+        songs.forEach(index::put);
+        for (String query : List.of("be", "BEAT", "jude", "n le", "xyz")) {
+            int[] matched = songs.stream().filter(s -> TrigramIndex.matches(s, query)).mapToInt(Song::getId).toArray();
+            assertArrayEquals(index.search(query), matched, query);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.demo2.dal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("WriteBehindWriter Tests")
+class WriteBehindWriterTest {
+
+    private static WriteBehindWriter.Mutation save(int playlistId, int position, int songId) {
+        return new WriteBehindWriter.Mutation("ps:" + playlistId + ":" + position, "ps:" + playlistId, null,
+                "INSERT OR REPLACE INTO playlist_songs(playlist_id, position, song_id) VALUES(?, ?, ?)", ps -> {
+                    ps.setInt(1, playlistId);
+                    ps.setInt(2, position);
+                    ps.setInt(3, songId);
+                });
+    }
+
+    private static WriteBehindWriter.Mutation clear(int playlistId) {
+        return new WriteBehindWriter.Mutation("clear:" + playlistId, null, "ps:" + playlistId,
+                "DELETE FROM playlist_songs WHERE playlist_id = ?", ps -> ps.setInt(1, playlistId));
+    }
+
+    @Test
+    @DisplayName("Later writes to the same row and scope clears supersede earlier writes")
+    void testCoalesce() {
+        WriteBehindWriter.Mutation a = save(1, 0, 10);
+        WriteBehindWriter.Mutation b = save(1, 1, 11);
+        WriteBehindWriter.Mutation other = save(2, 0, 20);
+        WriteBehindWriter.Mutation c = clear(1);
+        WriteBehindWriter.Mutation d = save(1, 0, 12);
+        WriteBehindWriter.Mutation e = save(1, 0, 13);
+
+        List<WriteBehindWriter.Mutation> kept = WriteBehindWriter.coalesce(List.of(a, b, other, c, d, e));
+
+        assertEquals(List.of(other, c, e), kept);
+    }
+
+    @Test
+    @DisplayName("Flush commits all queued writes in order")
+    void testFlushCommitsInOrder() throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:file:wbw?mode=memory&cache=shared");
+             Connection writerConnection = DriverManager.getConnection("jdbc:sqlite:file:wbw?mode=memory&cache=shared")) {
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE TABLE playlist_songs (playlist_id INTEGER, position INTEGER, song_id INTEGER, " +
+                        "PRIMARY KEY (playlist_id, position))");
+            }
+            WriteBehindWriter writer = new WriteBehindWriter(writerConnection, 100, 10_000);
+            for (int i = 0; i < 50; i++) writer.submit(save(1, i, i));
+            writer.submit(clear(1));
+            writer.submit(save(1, 0, 99));
+            writer.flush();
+
+            List<Integer> songs = new ArrayList<>();
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT song_id FROM playlist_songs ORDER BY position")) {
+                while (rs.next()) songs.add(rs.getInt(1));
+            }
+            assertEquals(List.of(99), songs);
+            writer.close();
+        }
+    }
+
+    @Test
+    @DisplayName("A binder that throws does not stop the writer")
+    void testFailingBinderKeepsWriterAlive() throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:file:wbw-fail?mode=memory&cache=shared");
+             Connection writerConnection = DriverManager.getConnection("jdbc:sqlite:file:wbw-fail?mode=memory&cache=shared")) {
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE TABLE playlist_songs (playlist_id INTEGER, position INTEGER, song_id INTEGER, " +
+                        "PRIMARY KEY (playlist_id, position))");
+            }
+            WriteBehindWriter writer = new WriteBehindWriter(writerConnection, 100, 10_000);
+            writer.submit(save(1, 0, 10));
+            writer.submit(new WriteBehindWriter.Mutation(null, null, null,
+                    "INSERT INTO playlist_songs(playlist_id, position, song_id) VALUES(?, ?, ?)", ps -> {
+                        throw new IllegalArgumentException("bad row");
+                    }));
+            writer.flush();
+            writer.submit(save(1, 1, 11));
+            writer.flush();
+
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM playlist_songs")) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+            }
+            writer.close();
+        }
+    }
+}
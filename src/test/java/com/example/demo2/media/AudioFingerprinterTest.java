@@ -0,0 +1,89 @@
+package com.example.demo2.media;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AudioFingerprinter Tests")
+class AudioFingerprinterTest {
+
+    @Test
+    @DisplayName("MP3 tags do not change the fingerprint, the audio does")
+    void testMp3IgnoresTags(@TempDir Path dir) throws IOException {
+        byte[] audio = new byte[5000];
+        Arrays.fill(audio, (byte) 0x55);
+        Path a = write(dir, "a.mp3", id3v2("First title"), audio);
+        Path b = write(dir, "b.mp3", id3v2("A much longer second title"), audio, id3v1("Other"));
+        Path plain = write(dir, "c.mp3", audio);
+        audio[2500] = 0;
+        Path changed = write(dir, "d.mp3", id3v2("First title"), audio);
+
+        String fingerprint = AudioFingerprinter.fingerprint(a);
+        assertEquals(fingerprint, AudioFingerprinter.fingerprint(b));
+        assertEquals(fingerprint, AudioFingerprinter.fingerprint(plain));
+        assertNotEquals(fingerprint, AudioFingerprinter.fingerprint(changed));
+    }
+
+    @Test
+    @DisplayName("Only the data chunk of a WAV file is hashed")
+    void testWavHashesDataChunk(@TempDir Path dir) throws IOException {
+        byte[] samples = new byte[1000];
+        Arrays.fill(samples, (byte) 7);
+        Path a = write(dir, "a.wav", wav(samples, "Title"));
+        Path b = write(dir, "b.wav", wav(samples, "Another title"));
+        assertEquals(AudioFingerprinter.fingerprint(a), AudioFingerprinter.fingerprint(b));
+    }
+
+    private static byte[] id3v2(String title) {
+        byte[] text = title.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer frame = ByteBuffer.allocate(11 + text.length).put(ascii("TIT2")).putInt(text.length + 1)
+                .putShort((short) 0).put((byte) 0).put(text);
+        int n = frame.capacity();
+        return concat(ascii("ID3"), new byte[]{3, 0, 0, 0, 0, (byte) (n >> 7 & 0x7F), (byte) (n & 0x7F)}, frame.array());
+    }
+
+    private static byte[] id3v1(String title) {
+        byte[] tag = new byte[128];
+        System.arraycopy(ascii("TAG" + title), 0, tag, 0, 3 + title.length());
+        return tag;
+    }
+
+    private static byte[] wav(byte[] samples, String title) {
+        ByteBuffer info = ByteBuffer.allocate(12 + title.length() + 1 + 1).order(ByteOrder.LITTLE_ENDIAN);
+        info.put(ascii("INFOINAM")).putInt(title.length() + 1).put(ascii(title));
+        byte[] list = Arrays.copyOf(info.array(), 12 + ((title.length() + 2) & ~1));
+        return concat(ascii("RIFF"), new byte[4], ascii("WAVE"), chunk("LIST", list), chunk("data", samples));
+    }
+
+    private static byte[] chunk(String id, byte[] body) {
+        return ByteBuffer.allocate(8 + body.length).order(ByteOrder.LITTLE_ENDIAN)
+                .put(ascii(id)).putInt(body.length).put(body).array();
+    }
+
+    private static Path write(Path dir, String name, byte[]... parts) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, concat(parts));
+        return file;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.writeBytes(p);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.demo2.media;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MediaMetadataReader Tests")
+class MediaMetadataReaderTest {
+
+    @Test
+    @DisplayName("WAV duration comes from the data chunk and the byte rate, tags from LIST/INFO")
+    void testWav(@TempDir Path dir) throws IOException {
+        int byteRate = 44100 * 2 * 2;
+        byte[] info = concat(ascii("INFO"), wavChunk("INAM", ascii("Song\0")), wavChunk("IART", ascii("Band\0")));
+        byte[] fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) 1).putShort((short) 2).putInt(44100).putInt(byteRate)
+                .putShort((short) 4).putShort((short) 16).array();
+        byte[] body = concat(ascii("WAVE"), wavChunk("fmt ", fmt), wavChunk("LIST", info),
+                wavChunk("data", new byte[byteRate * 3]));
+        Path file = dir.resolve("a.wav");
+        Files.write(file, concat(wavChunk("RIFF", body)));
+
+        MediaMetadata meta = MediaMetadataReader.read(file);
+        assertEquals(3000, meta.durationMillis());
+        assertEquals("Song", meta.title());
+        assertEquals("Band", meta.artist());
+        assertEquals(1411, meta.bitrateKbps());
+    }
+
+    @Test
+    @DisplayName("MP3 duration comes from the Xing frame count, tags from ID3v2")
+    void testMp3(@TempDir Path dir) throws IOException {
+        byte[] frames = concat(id3Frame("TIT2", "Title"), id3Frame("TPE1", "Artist"), id3Frame("TALB", "Album"));
+        byte[] tag = concat(ascii("ID3"), new byte[]{3, 0, 0}, synchsafe(frames.length), frames);
+
+        // MPEG1 layer III, 128 kbps, 44.1 kHz, stereo: 417 byte frames of 1152 samples
+        int frameLength = 417;
+        ByteBuffer audio = ByteBuffer.allocate(frameLength * 4);
+        for (int i = 0; i < 4; i++) audio.putInt(i * frameLength, 0xFFFB9000);
+        audio.put(4 + 32, ascii("Xing")).putInt(4 + 36, 3).putInt(4 + 40, 1000).putInt(4 + 44, frameLength * 1000);
+        Path file = dir.resolve("a.mp3");
+        Files.write(file, concat(tag, audio.array()));
+
+        MediaMetadata meta = MediaMetadataReader.read(file);
+        assertEquals(1000L * 1152 * 1000 / 44100, meta.durationMillis());
+        assertEquals(26, meta.durationSeconds());
+        assertEquals("Title", meta.title());
+        assertEquals("Artist", meta.artist());
+        assertEquals("Album", meta.album());
+        assertEquals(127, meta.bitrateKbps());
+    }
+
+    @Test
+    @DisplayName("Unrecognised files give unknown metadata")
+    void testUnknown(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("notes.mp3");
+        Files.writeString(file, "not really an mp3 file");
+        assertEquals(MediaMetadata.UNKNOWN, MediaMetadataReader.read(file));
+    }
+
+    private static byte[] wavChunk(String id, byte[] data) {
+        ByteBuffer b = ByteBuffer.allocate(8 + data.length + (data.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        return b.put(ascii(id)).putInt(data.length).put(data).array();
+    }
+
+    private static byte[] id3Frame(String id, String text) {
+        byte[] value = text.getBytes(StandardCharsets.ISO_8859_1);
+        return ByteBuffer.allocate(11 + value.length).put(ascii(id)).putInt(value.length + 1)
+                .putShort((short) 0).put((byte) 0).put(value).array();
+    }
+
+    private static byte[] synchsafe(int n) {
+        return new byte[]{(byte) (n >> 21 & 0x7F), (byte) (n >> 14 & 0x7F), (byte) (n >> 7 & 0x7F), (byte) (n & 0x7F)};
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.writeBytes(p);
+        return out.toByteArray();
+    }
+}